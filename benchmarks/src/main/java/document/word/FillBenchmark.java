@@ -0,0 +1,65 @@
+package document.word;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * End to end fill of a synthetic template, with either parser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FillBenchmark {
+
+    @Param({ "100", "1000" })
+    public int paragraphs;
+
+    @Param({ "5" })
+    public int runsPerParagraph;
+
+    @Param({ "true", "false" })
+    public boolean splitPlaceholders;
+
+    @Param({ "100" })
+    public int tableRows;
+
+    @Param({ "5" })
+    public int listSize;
+
+    @Param({ "xwpf", "streaming" })
+    public String parser;
+
+    private byte[] template;
+    private Map<String, Object> variables;
+
+    @Setup
+    public void setup() {
+        template = SyntheticTemplate.create(paragraphs, runsPerParagraph, splitPlaceholders);
+        variables = SyntheticTemplate.variables(tableRows, listSize);
+    }
+
+    @Benchmark
+    public void fill() throws IOException {
+        if (parser.equals("streaming")) {
+            new StreamingWordDocumentTemplateParser(template, variables, false).fill(OutputStream.nullOutputStream());
+        } else {
+            new WordDocumentTemplateParser(template, variables, false).fill(OutputStream.nullOutputStream());
+        }
+    }
+}
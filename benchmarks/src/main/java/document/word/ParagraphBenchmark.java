@@ -0,0 +1,98 @@
+package document.word;
+
+import document.word.util.ParagraphUtil;
+import document.word.util.RunUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The run level operations, applied to every paragraph of a freshly loaded synthetic template.
+ * Loading the template is part of the per invocation setup, so it is not timed, but the GC profiler
+ * still counts its allocations; compare allocation figures between runs rather than reading them absolutely.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParagraphBenchmark {
+
+    private static final String[] LINES = { "first line", "second line", "third line" };
+
+    @Param({ "200" })
+    public int paragraphs;
+
+    @Param({ "5", "50" })
+    public int runsPerParagraph;
+
+    @Param({ "true" })
+    public boolean splitPlaceholders;
+
+    private byte[] template;
+    private XWPFDocument doc;
+
+    @Setup(Level.Trial)
+    public void createTemplate() {
+        template = SyntheticTemplate.create(paragraphs, runsPerParagraph, splitPlaceholders);
+    }
+
+    @Setup(Level.Invocation)
+    public void loadTemplate() throws IOException {
+        doc = new XWPFDocument(new ByteArrayInputStream(template));
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeTemplate() throws IOException {
+        doc.close();
+    }
+
+    @Benchmark
+    public XWPFDocument combineReplacePatternAcrossMultipleRuns() {
+        for (XWPFParagraph paragraph : doc.getParagraphs()) {
+            WordDocumentTemplateParser.combineReplacePatternAcrossMultipleRuns(paragraph);
+        }
+        return doc;
+    }
+
+    @Benchmark
+    public XWPFDocument spliceRunTail() {
+        for (XWPFParagraph paragraph : doc.getParagraphs()) {
+            RunUtil.spliceRunTail(paragraph.getRuns().get(0), 6, "${name}");
+        }
+        return doc;
+    }
+
+    @Benchmark
+    public XWPFDocument spliceRunHead() {
+        for (XWPFParagraph paragraph : doc.getParagraphs()) {
+            RunUtil.spliceRunHead(paragraph.getRuns().get(0), 6, "");
+        }
+        return doc;
+    }
+
+    @Benchmark
+    public XWPFDocument updateRunText() {
+        for (XWPFParagraph paragraph : doc.getParagraphs()) {
+            ParagraphUtil.updateRunText(paragraph, 0, LINES);
+        }
+        return doc;
+    }
+}
@@ -0,0 +1,59 @@
+package document.word;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * PlaceholderScanner against the regex it replaced, on typical run and paragraph texts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaceholderScannerBenchmark {
+
+    @Param({ "plain", "placeholders", "defaults" })
+    public String text;
+
+    private String input;
+
+    @Setup
+    public void setup() {
+        input = switch (text) {
+            case "plain" -> "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore.";
+            case "placeholders" -> "Dear ${name}, your order ${order.id} of ${order.date} contains ${count} items: ${items}.";
+            default -> "Dear ${name:-customer}, your order ${order.id:?order id is required} ships ${date:=[\"today\"]}.";
+        };
+    }
+
+    @Benchmark
+    public List<MatchResult> regex() {
+        List<MatchResult> result = new ArrayList<>();
+        Matcher matcher = PlaceholderScanner.PATTERN.matcher(input);
+        while (matcher.find()) {
+            result.add(matcher.toMatchResult());
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<PlaceholderToken> scanner() {
+        return PlaceholderScanner.scan(input);
+    }
+}
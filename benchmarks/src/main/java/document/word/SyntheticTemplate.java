@@ -0,0 +1,75 @@
+package document.word;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+
+/*
+ * Generates templates of a configurable shape, together with the variables that fill them.
+ *
+ * Every paragraph holds the given number of filler runs and one ${name} placeholder, split over three
+ * runs when splitPlaceholders is set. Every tenth paragraph also holds ${items}, which expands into
+ * listSize paragraphs. The document ends with a table whose ${rows[]} row expands into tableRows rows.
+ */
+final class SyntheticTemplate {
+
+    private SyntheticTemplate() {
+        throw new UnsupportedOperationException(getClass() + " cannot be instantiated");
+    }
+
+    static byte[] create(int paragraphs, int runsPerParagraph, boolean splitPlaceholders) {
+        try (XWPFDocument doc = new XWPFDocument()) {
+            for (int i = 0; i < paragraphs; i++) {
+                XWPFParagraph paragraph = doc.createParagraph();
+                for (int j = 0; j < runsPerParagraph; j++) {
+                    paragraph.createRun().setText("Lorem ipsum dolor sit amet " + j + ". ");
+                }
+                if (splitPlaceholders) {
+                    paragraph.createRun().setText("Dear ${na");
+                    paragraph.createRun().setText("m");
+                    paragraph.createRun().setText("e}, welcome.");
+                } else {
+                    paragraph.createRun().setText("Dear ${name}, welcome.");
+                }
+                if (i % 10 == 0) {
+                    paragraph.createRun().setText(" Items: ${items}");
+                }
+            }
+            XWPFTable table = doc.createTable(2, 2);
+            table.getRow(0).getCell(0).setText("Row");
+            table.getRow(0).getCell(1).setText("Total");
+            table.getRow(1).getCell(0).setText("${rows[]}");
+            table.getRow(1).getCell(1).setText("${total:-0}");
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            doc.write(outputStream);
+            return outputStream.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Map<String, Object> variables(int tableRows, int listSize) {
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < listSize; i++) {
+            items.add("item " + i);
+        }
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < tableRows; i++) {
+            rows.add("row " + i);
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("name", "Pet Store");
+        result.put("items", items);
+        result.put("rows[]", rows);
+        result.put("total", tableRows);
+        return result;
+    }
+}
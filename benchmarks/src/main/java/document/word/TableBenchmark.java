@@ -0,0 +1,67 @@
+package document.word;
+
+import document.word.util.TableUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Row expansion the way the XWPF based parser does it: insert a new row after the template row, then copy it.
+ * As in ParagraphBenchmark, the allocation figures include loading the template.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TableBenchmark {
+
+    @Param({ "10", "1000" })
+    public int tableRows;
+
+    private byte[] template;
+    private XWPFDocument doc;
+
+    @Setup(Level.Trial)
+    public void createTemplate() {
+        template = SyntheticTemplate.create(1, 1, false);
+    }
+
+    @Setup(Level.Invocation)
+    public void loadTemplate() throws IOException {
+        doc = new XWPFDocument(new ByteArrayInputStream(template));
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeTemplate() throws IOException {
+        doc.close();
+    }
+
+    @Benchmark
+    public XWPFTable copyRow() {
+        XWPFTable table = doc.getTableArray(0);
+        XWPFTableRow row = table.getRow(1);
+        for (int i = 0; i < tableRows; i++) {
+            TableUtil.copyRow(table.insertNewTableRow(2 + i), row);
+        }
+        return table;
+    }
+}
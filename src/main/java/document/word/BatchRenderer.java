@@ -0,0 +1,212 @@
+package document.word;
+
+import document.word.variable.VariableSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Renders many variable sets against one compiled template within the same JVM.
+ *
+ * Records are rendered on the given executor, each with its own variable scope. At most
+ * maxInFlight records are read ahead of the renders that have completed, so a large or
+ * endless record stream does not pile up in the executor queue.
+ *
+ * A failing record, e.g. one with a missing mandatory variable or one that cannot be read, is
+ * reported and skipped without stopping the rest of the batch. With setValidation, mandatory variables are checked
+ * before a record is rendered, so a record missing several of them fails right away, with all of them reported.
+ */
+public class BatchRenderer {
+
+    /*
+     * Output file name placeholders:
+     *     - {index} ------- position of the record in the batch, starting from 0
+     *     - {field:id} ---- value of the variable "id" of the record
+     */
+    private static final Pattern OUTPUT_PATTERN = Pattern.compile("\\{(index|field:([^}]+))\\}");
+
+    private final CompiledTemplate template;
+    private final Map<String, Object> commonVariables;
+    private final boolean checkEnvVar;
+    private final Executor executor;
+    private final int maxInFlight;
+    private final List<VariableSource> variableSources = new CopyOnWriteArrayList<>();
+    private String templateName = "template";
+    private RenderListener listener = RenderListener.NONE;
+    private RenderCache renderCache;
+    private boolean validation;
+
+    public BatchRenderer(CompiledTemplate template, Map<String, Object> commonVariables, boolean checkEnvVar) {
+        this(template, commonVariables, checkEnvVar, Runnable::run, 1);
+    }
+
+    public BatchRenderer(CompiledTemplate template, Map<String, Object> commonVariables, boolean checkEnvVar, Executor executor, int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("Max in flight must be positive: " + maxInFlight);
+        }
+        this.template = template;
+        this.commonVariables = new HashMap<>(commonVariables);
+        this.checkEnvVar = checkEnvVar;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /*
+     * See WordDocumentTemplateParser.addVariableSource.
+     */
+    public void addVariableSource(VariableSource source) {
+        variableSources.add(source);
+    }
+
+    /*
+     * See WordDocumentTemplateParser.setRenderListener.
+     */
+    public void setRenderListener(String templateName, RenderListener listener) {
+        this.templateName = templateName;
+        this.listener = listener;
+    }
+
+    /*
+     * See WordDocumentTemplateParser.setRenderCache.
+     */
+    public void setRenderCache(RenderCache renderCache) {
+        this.renderCache = renderCache;
+    }
+
+    /*
+     * See WordDocumentTemplateParser.setValidation.
+     */
+    public void setValidation(boolean validation) {
+        this.validation = validation;
+    }
+
+    /*
+     * Render all records and wait for them to complete. Failures are returned in record order.
+     */
+    public List<Failure> render(Iterator<? extends Map<String, Object>> records, String outputPattern) {
+        List<Failure> failures = Collections.synchronizedList(new ArrayList<>());
+        Semaphore permits = new Semaphore(maxInFlight);
+        boolean readFailed = false;
+        for (int index = 0; ; index++) {
+            try {
+                if (!records.hasNext()) break;
+            } catch (RuntimeException e) {
+                // the records cannot be read any further, e.g. after malformed json,
+                // which is reported once, by the record it made fail if there is one
+                if (!readFailed) failures.add(new Failure(index, e));
+                break;
+            }
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            int recordIndex = index;
+            Map<String, Object> record;
+            try {
+                record = records.next();
+            } catch (RuntimeException e) {
+                // e.g. a json line that is not an object, which the iterator skips
+                permits.release();
+                failures.add(new Failure(recordIndex, e));
+                readFailed = true;
+                continue;
+            }
+            readFailed = false;
+            try {
+                executor.execute(() -> {
+                    try {
+                        render(record, recordIndex, outputPattern);
+                    } catch (IOException | RuntimeException e) {
+                        failures.add(new Failure(recordIndex, e));
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                failures.add(new Failure(recordIndex, e));
+            }
+        }
+        permits.acquireUninterruptibly(maxInFlight);
+
+        List<Failure> result = new ArrayList<>(failures);
+        result.sort(Comparator.comparingInt(Failure::getIndex));
+        return result;
+    }
+
+    private void render(Map<String, Object> record, int index, String outputPattern) throws IOException {
+        File output = new File(resolveOutputName(outputPattern, index, record));
+        File parent = output.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory: " + parent);
+        }
+
+        Map<String, Object> variables = new HashMap<>(commonVariables);
+        variables.putAll(record);
+        WordDocumentTemplateParser parser = new WordDocumentTemplateParser(template, variables, checkEnvVar);
+        variableSources.forEach(parser::addVariableSource);
+        parser.setRenderListener(templateName, listener);
+        parser.setValidation(validation);
+        parser.setRenderCache(renderCache);
+        parser.fill(output);
+    }
+
+    static String resolveOutputName(String outputPattern, int index, Map<String, Object> record) {
+        StringBuilder result = new StringBuilder();
+        Matcher matcher = OUTPUT_PATTERN.matcher(outputPattern);
+        while (matcher.find()) {
+            String replacement;
+            if (matcher.group(2) == null) {
+                replacement = String.valueOf(index);
+            } else {
+                Object value = record.get(matcher.group(2));
+                if (value == null) {
+                    throw new IllegalArgumentException("Missing output file name field: " + matcher.group(2));
+                }
+                replacement = String.valueOf(value);
+            }
+            matcher.appendReplacement(result, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    public static class Failure {
+        private final int index;
+        private final Exception cause;
+
+        Failure(int index, Exception cause) {
+            this.index = index;
+            this.cause = cause;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public Exception getCause() {
+            return cause;
+        }
+
+        @Override
+        public String toString() {
+            return "Record " + index + " failed: " + cause.getMessage();
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package document.word;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.ZipEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.apache.poi.xwpf.usermodel.IBody;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+
+/*
+ * An immutable, pre-parsed form of a template.
+ *
+ * Placeholders that Word split across multiple runs are merged once at compile time, and the
+ * resulting package is kept in memory, so that every fill only has to apply the variables to
+ * a fresh copy of the document. The package is kept uncompressed, which costs more memory but
+ * saves inflating every part again for every fill. The xml of the main document, headers and
+ * footers is not even parsed again, but copied from the template parsed by the first fill, see
+ * DocumentPrototype; TemplatePool goes further and makes the copies ahead of time.
+ *
+ * A compiled template can be saved as an artifact, by default next to the template, and opened again by
+ * another process without compiling the template again. The artifact is memory mapped, and holds:
+ *
+ * "WDTC", the format version (int), the SHA-256 of the template it was compiled from (32 bytes),
+ * the number of placeholders (int) followed by their name, modifier, part name and location,
+ * the number of malformed placeholders (int) followed by their text, part name and location,
+ * the length of the package (int) followed by the package, and the CRC32 of everything before it (long).
+ *
+ * Strings are written as their UTF-8 length (int, -1 for null) followed by their bytes, all in big endian.
+ * The placeholders include the "[]" ones with the table row they repeat, so opening an artifact needs
+ * no scan of the package at all.
+ */
+public final class CompiledTemplate {
+
+    public static final String ARTIFACT_EXTENSION = ".compiled";
+
+    private static final byte[] MAGIC = {'W', 'D', 'T', 'C'};
+    private static final int FORMAT_VERSION = 2;
+    private static final Set<PosixFilePermission> ARTIFACT_PERMISSIONS = PosixFilePermissions.fromString("rw-r--r--");
+
+    private final ByteBuffer content;
+    private final TemplateAnalysis analysis;
+    private final byte[] sourceDigest;
+    private volatile DocumentPrototype prototype;
+
+    private CompiledTemplate(ByteBuffer content, TemplateAnalysis analysis, byte[] sourceDigest) {
+        this.content = content.asReadOnlyBuffer();
+        this.analysis = analysis;
+        this.sourceDigest = sourceDigest;
+    }
+
+    public static CompiledTemplate compile(File source) throws IOException {
+        return compile(Files.readAllBytes(source.toPath()));
+    }
+
+    /*
+     * The stream is read fully and left open.
+     */
+    public static CompiledTemplate compile(InputStream source) throws IOException {
+        return compile(source.readAllBytes());
+    }
+
+    private static CompiledTemplate compile(byte[] source) throws IOException {
+        try (XWPFDocument doc = new XWPFDocument(new ByteArrayInputStream(source))) {
+            WordDocumentTemplateParser.forEachBody(doc, CompiledTemplate::normalise);
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            doc.write(outputStream);
+            byte[] content = store(outputStream.toByteArray());
+            return new CompiledTemplate(ByteBuffer.wrap(content), TemplateAnalysis.analyze(content), digest(source));
+        }
+    }
+
+    /*
+     * The artifact saved next to the template if it was compiled from the template as it is now,
+     * otherwise the template compiled. The template is read either way, to check the artifact.
+     */
+    public static CompiledTemplate compileOrOpen(File source) throws IOException {
+        byte[] bytes = Files.readAllBytes(source.toPath());
+        Path artifact = artifactOf(source.toPath());
+        if (Files.isRegularFile(artifact)) {
+            try {
+                CompiledTemplate template = open(artifact);
+                if (Arrays.equals(template.sourceDigest, digest(bytes))) {
+                    return template;
+                }
+            } catch (IOException e) {
+                // an artifact of another version, or a broken one, is no worse than none
+            }
+        }
+        return compile(bytes);
+    }
+
+    /*
+     * Where the artifact of a template is saved by default: "template.docx.compiled" next to "template.docx".
+     */
+    public static Path artifactOf(Path template) {
+        return template.resolveSibling(template.getFileName() + ARTIFACT_EXTENSION);
+    }
+
+    /*
+     * Save the artifact, see the format above. It is written to a temporary file first, then moved
+     * in place, so that other processes never open a partly written artifact.
+     */
+    public void save(Path artifact) throws IOException {
+        List<Placeholder> placeholders = analysis.getPlaceholders();
+        List<MalformedPlaceholder> malformed = analysis.getMalformed();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(content.remaining() + placeholders.size() * 64 + 64);
+        CheckedOutputStream checkedStream = new CheckedOutputStream(outputStream, new CRC32());
+        DataOutputStream dataStream = new DataOutputStream(checkedStream);
+        dataStream.write(MAGIC);
+        dataStream.writeInt(FORMAT_VERSION);
+        dataStream.write(sourceDigest);
+        dataStream.writeInt(placeholders.size());
+        for (Placeholder placeholder : placeholders) {
+            writeString(dataStream, placeholder.getName());
+            writeString(dataStream, placeholder.getModifier());
+            writeString(dataStream, placeholder.getPartName());
+            writeString(dataStream, placeholder.getLocation());
+        }
+        dataStream.writeInt(malformed.size());
+        for (MalformedPlaceholder placeholder : malformed) {
+            writeString(dataStream, placeholder.getText());
+            writeString(dataStream, placeholder.getPartName());
+            writeString(dataStream, placeholder.getLocation());
+        }
+        dataStream.writeInt(content.remaining());
+        Channels.newChannel(dataStream).write(content.duplicate());
+        dataStream.flush();
+        new DataOutputStream(outputStream).writeLong(checkedStream.getChecksum().getValue());
+
+        // a unique name, so that threads saving the same artifact never write to the same temporary file
+        Path temporary = Files.createTempFile(artifact.toAbsolutePath().getParent(), artifact.getFileName().toString(), ".tmp");
+        try {
+            // createTempFile makes the file readable by its owner only, which would keep other users' render processes out
+            if (Files.getFileAttributeView(temporary, PosixFileAttributeView.class) != null) {
+                Files.setPosixFilePermissions(temporary, ARTIFACT_PERMISSIONS);
+            }
+            Files.write(temporary, outputStream.toByteArray());
+            Files.move(temporary, artifact, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /*
+     * Open a saved artifact. It is memory mapped rather than read, and checked against its checksum.
+     */
+    public static CompiledTemplate open(Path artifact) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(artifact, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a compiled template: " + artifact);
+            }
+            int version = buffer.getInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported compiled template version " + version + ": " + artifact);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().position(0).limit(buffer.limit() - Long.BYTES));
+            if (crc.getValue() != buffer.getLong(buffer.limit() - Long.BYTES)) {
+                throw new IOException("Corrupt compiled template, checksum mismatch: " + artifact);
+            }
+
+            byte[] sourceDigest = new byte[32];
+            buffer.get(sourceDigest);
+            int count = buffer.getInt();
+            List<Placeholder> placeholders = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                placeholders.add(new Placeholder(readString(buffer), readString(buffer), readString(buffer), readString(buffer)));
+            }
+            count = buffer.getInt();
+            List<MalformedPlaceholder> malformed = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                malformed.add(new MalformedPlaceholder(readString(buffer), readString(buffer), readString(buffer)));
+            }
+            int length = buffer.getInt();
+            ByteBuffer content = buffer.slice(buffer.position(), length);
+            return new CompiledTemplate(content, TemplateAnalysis.of(placeholders, malformed), sourceDigest);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupt compiled template: " + artifact, e);
+        }
+    }
+
+    /*
+     * Every placeholder occurrence in the template, in document order:
+     * the main body first, then headers, footers, footnotes and endnotes.
+     */
+    public List<Placeholder> getPlaceholders() {
+        return analysis.getPlaceholders();
+    }
+
+    public TemplateAnalysis getAnalysis() {
+        return analysis;
+    }
+
+    /*
+     * A fresh copy of the template, owned by the caller. The template is parsed by the first call only,
+     * see DocumentPrototype, so that opening an artifact stays cheap when it is not filled.
+     */
+    XWPFDocument newDocument() throws IOException {
+        DocumentPrototype result = prototype;
+        if (result == null) {
+            synchronized (this) {
+                result = prototype;
+                if (result == null) {
+                    byte[] bytes = new byte[content.remaining()];
+                    content.duplicate().get(bytes);
+                    result = new DocumentPrototype(new XWPFDocument(new ByteArrayInputStream(bytes)), bytes);
+                    prototype = result;
+                }
+            }
+        }
+        return result.newDocument();
+    }
+
+    /*
+     * The SHA-256 of the template it was compiled from.
+     */
+    byte[] getSourceDigest() {
+        return sourceDigest.clone();
+    }
+
+    static byte[] digest(byte[] source) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(source);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream dataStream, String value) throws IOException {
+        if (value == null) {
+            dataStream.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        dataStream.writeInt(bytes.length);
+        dataStream.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /*
+     * The same zip archive, with every entry stored rather than deflated.
+     */
+    private static byte[] store(byte[] zip) throws IOException {
+        return rewrite(zip, Map.of());
+    }
+
+    /*
+     * The same zip archive, with every entry stored rather than deflated, and the entries of the given
+     * names replaced by the given content.
+     */
+    static byte[] rewrite(byte[] zip, Map<String, byte[]> replacements) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(zip.length * 4);
+        try (ZipFile zipFile = new ZipFile(new SeekableInMemoryByteChannel(zip));
+             ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(outputStream)) {
+            for (ZipArchiveEntry entry : Collections.list(zipFile.getEntriesInPhysicalOrder())) {
+                byte[] data = replacements.get(entry.getName());
+                if (data == null) {
+                    try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                        data = inputStream.readAllBytes();
+                    }
+                }
+                CRC32 crc = new CRC32();
+                crc.update(data);
+                ZipArchiveEntry stored = new ZipArchiveEntry(entry.getName());
+                stored.setMethod(ZipEntry.STORED);
+                stored.setSize(data.length);
+                stored.setCrc(crc.getValue());
+                zipOutputStream.putArchiveEntry(stored);
+                zipOutputStream.write(data);
+                zipOutputStream.closeArchiveEntry();
+            }
+        }
+        return outputStream.toByteArray();
+    }
+
+    private static void normalise(IBody body) {
+        for (XWPFParagraph paragraph : body.getParagraphs()) {
+            WordDocumentTemplateParser.combineReplacePatternAcrossMultipleRuns(paragraph);
+        }
+        for (XWPFTable table : body.getTables()) {
+            for (XWPFTableRow row : table.getRows()) {
+                for (XWPFTableCell cell : row.getTableCells()) {
+                    normalise(cell);
+                }
+            }
+        }
+    }
+}
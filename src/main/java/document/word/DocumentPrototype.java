@@ -0,0 +1,131 @@
+package document.word;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFFooter;
+import org.apache.poi.xwpf.usermodel.XWPFHeader;
+import org.apache.poi.xwpf.usermodel.XWPFHeaderFooter;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFSDT;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlObject;
+import org.apache.xmlbeans.XmlOptions;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTBody;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTHdrFtr;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTP;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTSdtBlock;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTTbl;
+
+/*
+ * A compiled template parsed once, handing out copies whose main document, headers and footers are
+ * copied from the parsed xml by XmlBeans, node by node, rather than parsed from text again.
+ *
+ * POI parses every part when a document is loaded, so a copy is loaded from a skeleton of the package
+ * in which these parts are empty, and their xml is copied in afterwards. The other parts, such as the
+ * styles, numbering, settings and notes, are still parsed for every copy, and are small in comparison
+ * to the body of a large template.
+ *
+ * The parsed template is only read, which XmlBeans allows from any number of threads. A copy made with
+ * XmlObject.copy would share its synchronization domain, so that reading one copy counts as a change to
+ * the others, and each copy of a header or footer gets a domain of its own.
+ */
+final class DocumentPrototype {
+
+    private static final String WORDPROCESSING_NAMESPACE = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    private static final XmlOptions COPY_OPTIONS = new XmlOptions().setCopyUseNewSynchronizationDomain(true);
+
+    private final XWPFDocument source;
+    private final byte[] skeleton;
+    // by part name
+    private final Map<String, CTHdrFtr> headersFooters = new HashMap<>();
+
+    /*
+     * The source is parsed from the package, and kept.
+     */
+    DocumentPrototype(XWPFDocument source, byte[] content) throws IOException {
+        this.source = source;
+        Map<String, byte[]> stubs = new HashMap<>();
+        stubs.put(entryName(source.getPackagePart().getPartName().getName()), stub("document", "<w:body/>"));
+        for (XWPFHeader header : source.getHeaderList()) {
+            add(header, stubs, stub("hdr", ""));
+        }
+        for (XWPFFooter footer : source.getFooterList()) {
+            add(footer, stubs, stub("ftr", ""));
+        }
+        this.skeleton = CompiledTemplate.rewrite(content, stubs);
+    }
+
+    XWPFDocument newDocument() throws IOException {
+        return new Copy(new ByteArrayInputStream(skeleton), this);
+    }
+
+    private void add(XWPFHeaderFooter part, Map<String, byte[]> stubs, byte[] stub) {
+        String partName = part.getPackagePart().getPartName().getName();
+        headersFooters.put(partName, part._getHdrFtr());
+        stubs.put(entryName(partName), stub);
+    }
+
+    private static String entryName(String partName) {
+        return partName.substring(1);
+    }
+
+    private static byte[] stub(String element, String content) {
+        return ("<w:" + element + " xmlns:w=\"" + WORDPROCESSING_NAMESPACE + "\">" + content + "</w:" + element + ">")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /*
+     * The body elements are read from the copied xml the same way XWPFDocument.onDocumentRead reads them
+     * from the parsed one, as of POI 5.2.5, through its protected bodyElements, paragraphs, tables and
+     * contentControls. A POI upgrade has to check onDocumentRead against this again; DocumentPrototypeTest
+     * compares a copy to the loaded template, including headers, footers, a content control and footnotes.
+     */
+    private static final class Copy extends XWPFDocument {
+
+        Copy(InputStream skeleton, DocumentPrototype prototype) throws IOException {
+            super(skeleton);
+            getDocument().set(prototype.source.getDocument());
+            CTBody body = getDocument().getBody();
+            if (body != null) {
+                try (XmlCursor cursor = body.newCursor()) {
+                    for (boolean found = cursor.toFirstChild(); found; found = cursor.toNextSibling()) {
+                        XmlObject object = cursor.getObject();
+                        if (object instanceof CTP) {
+                            XWPFParagraph paragraph = new XWPFParagraph((CTP) object, this);
+                            bodyElements.add(paragraph);
+                            paragraphs.add(paragraph);
+                        } else if (object instanceof CTTbl) {
+                            XWPFTable table = new XWPFTable((CTTbl) object, this, false);
+                            bodyElements.add(table);
+                            tables.add(table);
+                        } else if (object instanceof CTSdtBlock) {
+                            XWPFSDT contentControl = new XWPFSDT((CTSdtBlock) object, this);
+                            bodyElements.add(contentControl);
+                            contentControls.add(contentControl);
+                        }
+                    }
+                }
+                if (body.getSectPr() != null) {
+                    createHeaderFooterPolicy();
+                }
+            }
+            for (XWPFHeader header : getHeaderList()) {
+                copy(header, prototype);
+            }
+            for (XWPFFooter footer : getFooterList()) {
+                copy(footer, prototype);
+            }
+        }
+
+        private static void copy(XWPFHeaderFooter part, DocumentPrototype prototype) {
+            CTHdrFtr source = prototype.headersFooters.get(part.getPackagePart().getPartName().getName());
+            part.setHeaderFooter((CTHdrFtr) source.copy(COPY_OPTIONS));
+        }
+    }
+}
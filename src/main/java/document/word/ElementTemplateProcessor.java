@@ -0,0 +1,466 @@
+package document.word;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import javax.xml.stream.XMLStreamException;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/*
+ * The DOM counterpart of the paragraph and table row handling of WordDocumentTemplateParser,
+ * used by the streaming parser on one buffered w:p or w:tr element at a time.
+ *
+ * Runs are merged, variables replaced, paragraphs inserted for list values and table rows repeated
+ * for "[]" variables exactly the way the XWPF based parser does it on the XMLBeans tree.
+ */
+final class ElementTemplateProcessor {
+
+    static final String W_NS = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    private static final String XML_NS = "http://www.w3.org/XML/1998/namespace";
+
+    /*
+     * Elements whose w:r children are runs of the enclosing paragraph, matching XWPFParagraph.getRuns().
+     */
+    private static final Set<String> RUN_CONTAINERS = Set.of("hyperlink", "fldSimple", "smartTag", "ins", "del", "moveFrom", "moveTo");
+
+    private ElementTemplateProcessor() {
+        throw new UnsupportedOperationException(getClass() + " cannot be instantiated");
+    }
+
+    /*
+     * Process the paragraphs and then the tables of a container such as w:tc, in place.
+     */
+    private static void processBody(Element body, VariableResolver resolver, Function<String, List<PlaceholderToken>> scanner) {
+        for (Element paragraph : childElements(body, "p")) {
+            processParagraph(paragraph, resolver, scanner);
+        }
+        for (Element table : childElements(body, "tbl")) {
+            for (Element row : childElements(table, "tr")) {
+                List<Element> rows = processRow(row, resolver, scanner);
+                Node next = row.getNextSibling();
+                for (Element newRow : rows.subList(1, rows.size())) {
+                    table.insertBefore(newRow, next);
+                }
+            }
+        }
+    }
+
+    /*
+     * Returns the processed row followed by the rows generated for "[]" variables.
+     * The generated rows are not yet attached to the table.
+     */
+    static List<Element> processRow(Element row, VariableResolver resolver) {
+        return processRow(row, resolver, PlaceholderScanner::scan);
+    }
+
+    /*
+     * Same as processRow, but each row is handed to the sink as soon as it is filled. "[]" variables with a LazyList
+     * value are read one element per row, so only one generated row is held in memory at a time.
+     */
+    static void streamRow(Element row, VariableResolver resolver, RowSink sink) throws IOException, XMLStreamException {
+        VariableResolver.RowGroup rowGroup = resolver.rowGroup(retrieveAllTemplateVariableMatchesForTableRow(new ArrayList<>(), row));
+        if (!rowGroup.isLazy()) {
+            for (Element result : processRow(row, rowGroup, PlaceholderScanner::scan)) {
+                sink.accept(result);
+            }
+            return;
+        }
+
+        // the rows are written as they are filled, so the row expansion includes writing them
+        long start = System.nanoTime();
+        RenderStats stats = rowGroup.stats();
+        stats.count(RenderListener.Counter.RUNS_MERGED, combineRowRuns(row));
+        Function<String, List<PlaceholderToken>> rowScanner = PlaceholderScanner.caching();
+        int rowCount = 0;
+        try (VariableResolver.RowGroup.Rows rows = rowGroup.rows()) {
+            while (rows.next()) {
+                Element copy = (Element) row.cloneNode(true);
+                processCells(copy, rows.resolver(), rowScanner);
+                sink.accept(copy);
+                rowCount++;
+            }
+        }
+        stats.count(RenderListener.Counter.ROWS_GENERATED, Math.max(rowCount - 1, 0));
+        stats.addTime(RenderListener.Phase.ROW_EXPANSION, System.nanoTime() - start);
+    }
+
+    /*
+     * Paragraphs created for list values are inserted before the paragraph, which must therefore have a parent.
+     */
+    static void processParagraph(Element paragraph, VariableResolver resolver) {
+        processParagraph(paragraph, resolver, PlaceholderScanner::scan);
+    }
+
+    /*
+     * Same as WordDocumentTemplateParser: split placeholders are merged before the row is copied,
+     * and the copies share the scans of the first row.
+     */
+    private static List<Element> processRow(Element row, VariableResolver resolver, Function<String, List<PlaceholderToken>> scanner) {
+        return processRow(row, resolver.rowGroup(retrieveAllTemplateVariableMatchesForTableRow(new ArrayList<>(), row)), scanner);
+    }
+
+    private static List<Element> processRow(Element row, VariableResolver.RowGroup rowGroup, Function<String, List<PlaceholderToken>> scanner) {
+        int rowsToRepeat = rowGroup.rowCount();
+        if (rowsToRepeat == 1) {
+            processCells(row, rowGroup.forRow(0), scanner);
+            return List.of(row);
+        }
+
+        long start = System.nanoTime();
+        RenderStats stats = rowGroup.stats();
+        stats.count(RenderListener.Counter.RUNS_MERGED, combineRowRuns(row));
+        Function<String, List<PlaceholderToken>> rowScanner = PlaceholderScanner.caching();
+        List<Element> result = new ArrayList<>(rowsToRepeat);
+        result.add(row);
+        for (int i = 1; i < rowsToRepeat; i++) {
+            result.add((Element) row.cloneNode(true));
+        }
+        for (int i = 1; i < rowsToRepeat; i++) {
+            processCells(result.get(i), rowGroup.forRow(i), rowScanner);
+        }
+        processCells(row, rowGroup.forRow(0), rowScanner);
+        stats.count(RenderListener.Counter.ROWS_GENERATED, rowsToRepeat - 1);
+        stats.addTime(RenderListener.Phase.ROW_EXPANSION, System.nanoTime() - start);
+        return result;
+    }
+
+    @FunctionalInterface
+    interface RowSink {
+        void accept(Element row) throws XMLStreamException;
+    }
+
+    private static void processParagraph(Element paragraph, VariableResolver resolver, Function<String, List<PlaceholderToken>> scanner) {
+        resolver.stats().count(RenderListener.Counter.RUNS_MERGED, combineReplacePatternAcrossMultipleRuns(paragraph, scanner));
+
+        int index = 0;
+        for (Element run : runs(paragraph)) {
+            String text = runText(run);
+            List<PlaceholderToken> matches = scanner.apply(text);
+            if (matches.isEmpty()) {
+                index++;
+                continue;
+            }
+
+            StringBuilder replacedText = new StringBuilder();
+            int tail = 0;
+            for (PlaceholderToken match : matches) {
+                Object substitution = resolver.resolve(match);
+                if (substitution instanceof List<?> substitutions) {
+                    resolver.stats().count(RenderListener.Counter.PARAGRAPHS_INSERTED, Math.max(substitutions.size() - 1, 0));
+                }
+                if (substitution instanceof List<?> substitutions && substitutions.size() > 1) {
+                    for (int i = 0, len = substitutions.size(); i < len - 1; i++) {
+                        Element newParagraph = newParagraphBefore(paragraph);
+                        Element newRun = newRunWithStyleOf(run);
+                        if (i == 0) {
+                            replacedText.append(text, tail, match.start()).append(substitutions.get(0));
+                            List<Element> previousRuns = runs(paragraph).subList(0, index);
+                            for (Element previousRun : previousRuns) {
+                                newParagraph.appendChild(previousRun.cloneNode(true));
+                            }
+                            newParagraph.appendChild(newRun);
+                            updateRunText(newRun, replacedText.toString().split("\n"));
+                            for (Element previousRun : new ArrayList<>(previousRuns)) {
+                                previousRun.getParentNode().removeChild(previousRun);
+                            }
+                            index = 0;
+                            replacedText = new StringBuilder();
+                        } else {
+                            newParagraph.appendChild(newRun);
+                            updateRunText(newRun, String.valueOf(substitutions.get(i)).split("\n"));
+                        }
+                    }
+                    replacedText.append(substitutions.get(substitutions.size() - 1));
+                } else if (substitution instanceof List<?> substitutions) {
+                    replacedText.append(text, tail, match.start()).append(substitutions.isEmpty() ? "" : String.valueOf(substitutions.get(0)));
+                } else {
+                    replacedText.append(text, tail, match.start()).append(substitution);
+                }
+                tail = match.end();
+            }
+            replacedText.append(text, tail, text.length());
+            updateRunText(run, replacedText.toString().split("\n"));
+            index++;
+        }
+    }
+
+    static void combineReplacePatternAcrossMultipleRuns(Element paragraph) {
+        combineReplacePatternAcrossMultipleRuns(paragraph, PlaceholderScanner::scan);
+    }
+
+    /*
+     * Returns the number of runs merged into the run their placeholder starts in.
+     */
+    private static int combineReplacePatternAcrossMultipleRuns(Element paragraph, Function<String, List<PlaceholderToken>> scanner) {
+        List<Element> runs = runs(paragraph);
+        int[] starts = new int[runs.size()];
+        int[] ends = new int[runs.size()];
+        StringBuilder full = new StringBuilder();
+        for (int i = 0; i < runs.size(); i++) {
+            starts[i] = full.length();
+            full.append(runText(runs.get(i)));
+            ends[i] = full.length();
+        }
+
+        int merged = 0;
+        int runIndex = 0;
+        for (PlaceholderToken match : scanner.apply(full.toString())) {
+            while (match.start() >= ends[runIndex]) {
+                runIndex++;
+            }
+            int runStartIndex = runIndex;
+
+            while (match.end() > ends[runIndex]) {
+                runIndex++;
+            }
+            int runEndIndex = runIndex;
+
+            if (runStartIndex != runEndIndex) {
+                merged += runEndIndex - runStartIndex;
+                spliceRunTail(runs.get(runStartIndex), ends[runStartIndex] - match.start(), match.text());
+                while (++runStartIndex < runEndIndex) {
+                    Element run = runs.get(runStartIndex);
+                    run.getParentNode().removeChild(run);
+                }
+                spliceRunHead(runs.get(runEndIndex), match.end() - starts[runEndIndex], "");
+            }
+        }
+        return merged;
+    }
+
+    static String paragraphText(Element paragraph) {
+        StringBuilder result = new StringBuilder();
+        for (Element run : runs(paragraph)) {
+            result.append(runText(run));
+        }
+        return result.toString();
+    }
+
+    private static void processCells(Element row, VariableResolver resolver, Function<String, List<PlaceholderToken>> scanner) {
+        for (Element cell : childElements(row, "tc")) {
+            processBody(cell, resolver, scanner);
+        }
+    }
+
+    /*
+     * Returns the number of runs merged.
+     */
+    private static int combineRowRuns(Element row) {
+        int merged = 0;
+        for (Element cell : childElements(row, "tc")) {
+            for (Element paragraph : childElements(cell, "p")) {
+                merged += combineReplacePatternAcrossMultipleRuns(paragraph, PlaceholderScanner::scan);
+            }
+            for (Element table : childElements(cell, "tbl")) {
+                for (Element nestedRow : childElements(table, "tr")) {
+                    merged += combineRowRuns(nestedRow);
+                }
+            }
+        }
+        return merged;
+    }
+
+    /*
+     * Every template variable in the row, including nested tables, in document order.
+     */
+    static List<PlaceholderToken> rowTemplateVariables(Element row) {
+        return retrieveAllTemplateVariableMatchesForTableRow(new ArrayList<>(), row);
+    }
+
+    /*
+     * The text of every paragraph in the row, including those of nested tables, in document order.
+     */
+    static List<String> rowParagraphTexts(Element row) {
+        return rowParagraphTexts(new ArrayList<>(), row);
+    }
+
+    private static List<String> rowParagraphTexts(List<String> result, Element row) {
+        for (Element cell : childElements(row, "tc")) {
+            for (Element paragraph : childElements(cell, "p")) {
+                result.add(paragraphText(paragraph));
+            }
+            for (Element table : childElements(cell, "tbl")) {
+                for (Element r : childElements(table, "tr")) {
+                    rowParagraphTexts(result, r);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static List<PlaceholderToken> retrieveAllTemplateVariableMatchesForTableRow(List<PlaceholderToken> result, Element row) {
+        for (Element cell : childElements(row, "tc")) {
+            for (Element paragraph : childElements(cell, "p")) {
+                result.addAll(PlaceholderScanner.scan(paragraphText(paragraph)));
+            }
+            for (Element table : childElements(cell, "tbl")) {
+                for (Element r : childElements(table, "tr")) {
+                    retrieveAllTemplateVariableMatchesForTableRow(result, r);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Element newParagraphBefore(Element paragraph) {
+        Element newParagraph = createElement(paragraph, "p");
+        Element style = firstChildElement(paragraph, "pPr");
+        if (style != null) {
+            newParagraph.appendChild(style.cloneNode(true));
+        }
+        paragraph.getParentNode().insertBefore(newParagraph, paragraph);
+        return newParagraph;
+    }
+
+    private static Element newRunWithStyleOf(Element run) {
+        Element newRun = createElement(run, "r");
+        Element style = firstChildElement(run, "rPr");
+        if (style != null) {
+            newRun.appendChild(style.cloneNode(true));
+        }
+        return newRun;
+    }
+
+    /*
+     * Same as ParagraphUtil.updateRunText: the first line replaces the text of the run,
+     * every other line follows it in the same run, after a br node.
+     */
+    private static void updateRunText(Element run, String[] linesWithBr) {
+        replaceRunText(run, linesWithBr.length == 0 ? "" : linesWithBr[0]);
+        Element first = childElements(run, "t").get(0);
+        Node next = first.getNextSibling();
+        for (int i = 1; i < linesWithBr.length; i++) {
+            run.insertBefore(createElement(run, "br"), next);
+            run.insertBefore(createText(run, linesWithBr[i]), next);
+        }
+    }
+
+    /*
+     * Same as RunUtil.replaceRunText: remove the br nodes and all but the first text node of the run.
+     */
+    private static void replaceRunText(Element run, String text) {
+        for (Element br : childElements(run, "br")) {
+            run.removeChild(br);
+        }
+        List<Element> texts = childElements(run, "t");
+        for (Element t : texts.subList(Math.min(1, texts.size()), texts.size())) {
+            run.removeChild(t);
+        }
+        if (texts.isEmpty()) {
+            run.appendChild(createText(run, text));
+        } else {
+            setText(texts.get(0), text);
+        }
+    }
+
+    private static void spliceRunTail(Element run, int numOfChar, String textToInsert) {
+        List<Element> texts = childElements(run, "t");
+        int i = texts.size() - 1;
+        while (i >= 0 && numOfChar > 0) {
+            String text = texts.get(i).getTextContent();
+            if (text.length() >= numOfChar) {
+                setText(texts.get(i), text.substring(0, text.length() - numOfChar) + textToInsert);
+                return;
+            }
+            if (i == 0) {
+                setText(texts.get(0), textToInsert);
+                return;
+            }
+            run.removeChild(texts.get(i));
+            numOfChar -= text.length();
+            i--;
+        }
+    }
+
+    private static void spliceRunHead(Element run, int numOfChar, String textToInsert) {
+        List<Element> texts = childElements(run, "t");
+        int i = 0;
+        while (i < texts.size() && numOfChar > 0) {
+            String text = texts.get(i).getTextContent();
+            if (text.length() >= numOfChar) {
+                setText(texts.get(i), textToInsert + text.substring(numOfChar));
+                return;
+            }
+            if (i == texts.size() - 1) {
+                setText(texts.get(i), textToInsert);
+                return;
+            }
+            run.removeChild(texts.get(i));
+            numOfChar -= text.length();
+            i++;
+        }
+    }
+
+    /*
+     * Same as XWPFRun.text(), minus field codes and footnote references.
+     */
+    private static String runText(Element run) {
+        StringBuilder result = new StringBuilder();
+        for (Node node = run.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element child && W_NS.equals(child.getNamespaceURI())) {
+                switch (child.getLocalName()) {
+                    case "t", "delText" -> result.append(child.getTextContent());
+                    case "tab", "ptab" -> result.append('\t');
+                    case "br", "cr" -> result.append('\n');
+                    default -> { }
+                }
+            }
+        }
+        return result.toString();
+    }
+
+    private static List<Element> runs(Element paragraph) {
+        return collectRuns(paragraph, new ArrayList<>());
+    }
+
+    private static List<Element> collectRuns(Element parent, List<Element> result) {
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element child && W_NS.equals(child.getNamespaceURI())) {
+                if ("r".equals(child.getLocalName())) {
+                    result.add(child);
+                } else if (RUN_CONTAINERS.contains(child.getLocalName())) {
+                    collectRuns(child, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Element createText(Element context, String text) {
+        Element t = createElement(context, "t");
+        setText(t, text);
+        return t;
+    }
+
+    private static void setText(Element t, String text) {
+        t.setTextContent(text);
+        t.setAttributeNS(XML_NS, "xml:space", "preserve");
+    }
+
+    private static Element createElement(Element context, String localName) {
+        String prefix = context.getPrefix();
+        return context.getOwnerDocument().createElementNS(W_NS, prefix == null ? localName : prefix + ":" + localName);
+    }
+
+    private static Element firstChildElement(Element parent, String localName) {
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element child && W_NS.equals(child.getNamespaceURI()) && localName.equals(child.getLocalName())) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private static List<Element> childElements(Element parent, String localName) {
+        List<Element> result = new ArrayList<>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element child && W_NS.equals(child.getNamespaceURI()) && localName.equals(child.getLocalName())) {
+                result.add(child);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,44 @@
+package document.word;
+
+/*
+ * A "${" in the template that starts no placeholder, e.g. an unclosed "${name" or an invalid "${first name}",
+ * which is left in the output as it is.
+ */
+public final class MalformedPlaceholder {
+
+    private final String text;
+    private final String partName;
+    private final String location;
+
+    public MalformedPlaceholder(String text, String partName, String location) {
+        this.text = text;
+        this.partName = partName;
+        this.location = location;
+    }
+
+    /*
+     * The text from the "${" up to the next "}", or up to where it can no longer be a placeholder.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /*
+     * The package part the text sits in, e.g. "/word/document.xml" or "/word/header1.xml".
+     */
+    public String getPartName() {
+        return partName;
+    }
+
+    /*
+     * The body level paragraph or table row of the part the text sits in, see Placeholder.getLocation.
+     */
+    public String getLocation() {
+        return location;
+    }
+
+    @Override
+    public String toString() {
+        return text + " in " + partName + (location == null ? "" : ", " + location);
+    }
+}
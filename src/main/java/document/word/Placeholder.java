@@ -0,0 +1,79 @@
+package document.word;
+
+public final class Placeholder {
+
+    public enum Kind {
+        /* replaced by a single value, or by one paragraph per element of a list */
+        SCALAR,
+        /* a "[]" variable, whose list repeats the table row it is in */
+        ROW
+    }
+
+    private final String name;
+    private final String modifier;
+    private final String partName;
+    private final String location;
+
+    public Placeholder(String name, String modifier, String partName) {
+        this(name, modifier, partName, null);
+    }
+
+    public Placeholder(String name, String modifier, String partName, String location) {
+        this.name = name;
+        this.modifier = modifier;
+        this.partName = partName;
+        this.location = location;
+    }
+
+    /*
+     * The variable name, including the "[]" suffix of table row variables.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /*
+     * The ":-", ":=" or ":?" suffix with its value, or null if there is none.
+     */
+    public String getModifier() {
+        return modifier;
+    }
+
+    /*
+     * The package part the placeholder sits in, e.g. "/word/document.xml" or "/word/header1.xml".
+     */
+    public String getPartName() {
+        return partName;
+    }
+
+    /*
+     * The body level paragraph or table row of the part the placeholder sits in, counted from 1,
+     * e.g. "paragraph 3" or "table 1, row 2", or null if unknown.
+     */
+    public String getLocation() {
+        return location;
+    }
+
+    public Kind getKind() {
+        return name.endsWith("[]") ? Kind.ROW : Kind.SCALAR;
+    }
+
+    /*
+     * Whether filling fails if the variable is missing, i.e. the placeholder has a ":?" modifier.
+     */
+    public boolean isRequired() {
+        return modifier != null && modifier.startsWith(":?");
+    }
+
+    /*
+     * Whether the placeholder has a ":-" or ":=" default value.
+     */
+    public boolean isDefaulted() {
+        return modifier != null && (modifier.startsWith(":-") || modifier.startsWith(":="));
+    }
+
+    @Override
+    public String toString() {
+        return "${" + name + (modifier == null ? "" : modifier) + "} in " + partName + (location == null ? "" : ", " + location);
+    }
+}
@@ -0,0 +1,172 @@
+package document.word;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/*
+ * A single pass scanner for template variables, finding exactly what PATTERN finds without a regex.
+ *
+ * The reluctant name group of PATTERN can only stop where the next character is not a name character,
+ * so the name is always the longest run of name characters, optionally followed by "[]". A modifier
+ * runs up to the first close curly bracket on the same line. Text without "${" is not scanned at all.
+ */
+final class PlaceholderScanner {
+
+    /*
+     * Pattern breakdown:
+     *
+     *     \$\{ ------------------- start with a dollar sign and an open curly bracket
+     *
+     *     ( ---------------------- start of group 1
+     *
+     *     [a-zA-Z0-9.$_-]+? ------ non-greedy match for a non empty string that consists of alphanumerics, dots, dollar signs, underscores or hyphens
+     *
+     *     (?:\[\])? -------------- an optional non-capturing group that matches an open square bracket and a close square bracket
+     *
+     *     ) ---------------------- end of group 1
+     *
+     *     ( ---------------------- start of group 2
+     *
+     *     :[-=?] ----------------- matches a colon, followed by a hyphen, an equal sign, or a question mark
+     *
+     *     .*? -------------------- non-greedy match for a nullable string
+     *
+     *     )? --------------------- end of optional group 2
+     *
+     *     \} --------------------- end with a close curly bracket
+     *
+     * Pattern examples:
+     *     - ${var_name}
+     *     - ${var_name:-default value}
+     *     - ${var_name:=assign if missing}
+     *     - ${var_name:?error if missing}
+     *     - ${table_row_array[]}
+     *     - ${table_row_array[]:-["default value 1","default value 2"]}
+     *
+     * Kept as the reference grammar of the scanner.
+     */
+    static final Pattern PATTERN = Pattern.compile("\\$\\{([a-zA-Z0-9.$_-]+?(?:\\[\\])?)(:[-=?].*?)?\\}");
+
+    private static final int EXCERPT_LENGTH = 40;
+
+    private PlaceholderScanner() {
+        throw new UnsupportedOperationException(getClass() + " cannot be instantiated");
+    }
+
+    /*
+     * All template variables in the text, in order.
+     */
+    static List<PlaceholderToken> scan(String text) {
+        int from = text.indexOf("${");
+        if (from < 0) return List.of();
+
+        List<PlaceholderToken> result = new ArrayList<>();
+        while (from >= 0) {
+            PlaceholderToken token = tokenAt(text, from);
+            if (token == null) {
+                from = text.indexOf("${", from + 1);
+            } else {
+                result.add(token);
+                from = text.indexOf("${", token.end());
+            }
+        }
+        return result;
+    }
+
+    /*
+     * A scan that remembers its result for every text, for text that is scanned over and over again,
+     * such as the copies of a table row expanded for "[]" variables. Not thread safe.
+     */
+    static Function<String, List<PlaceholderToken>> caching() {
+        Map<String, List<PlaceholderToken>> cache = new HashMap<>();
+        return text -> cache.computeIfAbsent(text, PlaceholderScanner::scan);
+    }
+
+    /*
+     * The offsets of every "${" that does not start a template variable and is not part of one,
+     * e.g. an unclosed "${name" or an invalid "${first name}".
+     */
+    static List<Integer> findMalformed(String text) {
+        int from = text.indexOf("${");
+        if (from < 0) return List.of();
+
+        List<Integer> result = new ArrayList<>();
+        while (from >= 0) {
+            PlaceholderToken token = tokenAt(text, from);
+            if (token == null) {
+                result.add(from);
+                from = text.indexOf("${", from + 1);
+            } else {
+                from = text.indexOf("${", token.end());
+            }
+        }
+        return result;
+    }
+
+    /*
+     * The text of the malformed template variable at the given offset, see findMalformed, up to and including
+     * the next "}", but no further than the next "${", the end of the line or EXCERPT_LENGTH characters.
+     */
+    static String excerpt(String text, int start) {
+        int end = Math.min(text.length(), start + EXCERPT_LENGTH);
+        for (int i = start + 2; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '}') return text.substring(start, i + 1);
+            if (isLineTerminator(c) || c == '$' && i + 1 < text.length() && text.charAt(i + 1) == '{') {
+                end = i;
+            }
+        }
+        return text.substring(start, end).stripTrailing();
+    }
+
+    /*
+     * The template variable starting at the "${" at the given offset, or null if there is none.
+     */
+    private static PlaceholderToken tokenAt(String text, int start) {
+        int length = text.length();
+        int position = start + 2;
+        while (position < length && isNameChar(text.charAt(position))) {
+            position++;
+        }
+        if (position == start + 2) return null;
+        if (position + 1 < length && text.charAt(position) == '[' && text.charAt(position + 1) == ']') {
+            position += 2;
+        }
+        int nameEnd = position;
+        if (position >= length) return null;
+
+        char next = text.charAt(position);
+        if (next == '}') {
+            return new PlaceholderToken(text, start, position + 1, nameEnd, -1);
+        }
+        if (next != ':' || position + 1 >= length || !isModifierChar(text.charAt(position + 1))) return null;
+
+        for (int i = position + 2; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '}') {
+                return new PlaceholderToken(text, start, i + 1, nameEnd, position);
+            }
+            if (isLineTerminator(c)) return null;
+        }
+        return null;
+    }
+
+    private static boolean isNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' || c == '$' || c == '_' || c == '-';
+    }
+
+    private static boolean isModifierChar(char c) {
+        return c == '-' || c == '=' || c == '?';
+    }
+
+    /*
+     * The characters not matched by "." without the DOTALL flag.
+     */
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
@@ -0,0 +1,66 @@
+package document.word;
+
+/*
+ * One template variable found by PlaceholderScanner, kept as offsets into the scanned text.
+ * The name and modifier strings are only created when asked for.
+ */
+final class PlaceholderToken {
+
+    private final String text;
+    private final int start;
+    private final int end;
+    private final int nameEnd;
+    private final int modifierStart;
+
+    PlaceholderToken(String text, int start, int end, int nameEnd, int modifierStart) {
+        this.text = text;
+        this.start = start;
+        this.end = end;
+        this.nameEnd = nameEnd;
+        this.modifierStart = modifierStart;
+    }
+
+    /*
+     * The offset of the dollar sign.
+     */
+    int start() {
+        return start;
+    }
+
+    /*
+     * The offset just after the close curly bracket.
+     */
+    int end() {
+        return end;
+    }
+
+    /*
+     * The variable name, including the "[]" suffix of table row variables.
+     */
+    String name() {
+        return text.substring(start + 2, nameEnd);
+    }
+
+    /*
+     * The ":-", ":=" or ":?" suffix with its value, or null if there is none.
+     */
+    String modifier() {
+        return modifierStart < 0 ? null : text.substring(modifierStart, end - 1);
+    }
+
+    boolean hasModifier(char kind) {
+        return modifierStart >= 0 && text.charAt(modifierStart + 1) == kind;
+    }
+
+    /*
+     * The whole placeholder, e.g. "${name:-default}".
+     */
+    String text() {
+        return text.substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return text();
+    }
+}
@@ -0,0 +1,339 @@
+package document.word;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * A size bounded cache of filled documents, keyed by the content of the template and the values of
+ * its variables, see WordDocumentTemplateParser.setRenderCache, so that filling the same template with
+ * the same variables again only copies the document filled the first time.
+ *
+ * Documents are kept either in memory or in files of a directory, which then survive a restart. Once the
+ * documents add up to more than the maximum size, the least recently used ones are evicted. A document
+ * larger than the maximum size on its own is not kept at all.
+ *
+ * A cache is thread safe, and can be shared by any number of parsers and templates.
+ */
+public abstract class RenderCache {
+
+    private final long maxBytes;
+    private final Map<String, Long> sizes = new LinkedHashMap<>(16, 0.75f, true);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private long totalBytes;
+
+    private RenderCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    public static RenderCache inMemory(long maxBytes) {
+        return new MemoryCache(maxBytes);
+    }
+
+    /*
+     * The documents already in the directory, e.g. from before a restart, are kept, the least recently
+     * modified ones being the first to be evicted.
+     */
+    public static RenderCache onDisk(Path directory, long maxBytes) throws IOException {
+        return new DiskCache(directory, maxBytes);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public synchronized int getEntryCount() {
+        return sizes.size();
+    }
+
+    public synchronized long getSizeBytes() {
+        return totalBytes;
+    }
+
+    /*
+     * The counters as a json friendly map, e.g. for the /metrics endpoint of the server.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("hits", getHits());
+        result.put("misses", getMisses());
+        result.put("evictions", getEvictions());
+        synchronized (this) {
+            result.put("entries", sizes.size());
+            result.put("sizeBytes", totalBytes);
+        }
+        result.put("maxSizeBytes", maxBytes);
+        return result;
+    }
+
+    /*
+     * The cached document, or null if there is none, which counts as a miss.
+     */
+    Hit get(String key) throws IOException {
+        Hit hit;
+        synchronized (this) {
+            // opened under the lock, so that the document cannot be evicted in between,
+            // and looked up with get, which makes it the most recently used
+            boolean cached = sizes.get(key) != null;
+            hit = cached ? open(key) : null;
+            if (hit == null && cached) {
+                remove(key);
+            }
+        }
+        (hit == null ? misses : hits).increment();
+        return hit;
+    }
+
+    void put(String key, byte[] document) throws IOException {
+        if (document.length > maxBytes) return;
+        store(key, document);
+        synchronized (this) {
+            remove(key);
+            sizes.put(key, (long) document.length);
+            totalBytes += document.length;
+            trim();
+        }
+    }
+
+    /*
+     * Evict the least recently used documents until the rest fit, called with the lock held.
+     */
+    void trim() throws IOException {
+        Iterator<Map.Entry<String, Long>> iterator = sizes.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            iterator.remove();
+            totalBytes -= eldest.getValue();
+            delete(eldest.getKey());
+            evictions.increment();
+        }
+    }
+
+    /*
+     * The stored document, or null if it went missing, called with the lock held.
+     */
+    abstract Hit open(String key) throws IOException;
+
+    abstract void store(String key, byte[] document) throws IOException;
+
+    /*
+     * Called with the lock held.
+     */
+    abstract void delete(String key) throws IOException;
+
+    /*
+     * Called with the lock held.
+     */
+    void add(String key, long size) {
+        sizes.put(key, size);
+        totalBytes += size;
+    }
+
+    private void remove(String key) {
+        Long size = sizes.remove(key);
+        if (size != null) totalBytes -= size;
+    }
+
+    interface Hit extends Closeable {
+
+        void transferTo(OutputStream target) throws IOException;
+
+        void transferTo(WritableByteChannel target) throws IOException;
+    }
+
+    private static final class MemoryCache extends RenderCache {
+
+        private final Map<String, byte[]> documents = new HashMap<>();
+
+        MemoryCache(long maxBytes) {
+            super(maxBytes);
+        }
+
+        @Override
+        Hit open(String key) {
+            byte[] document = documents.get(key);
+            if (document == null) return null;
+            return new Hit() {
+                @Override
+                public void transferTo(OutputStream target) throws IOException {
+                    target.write(document);
+                }
+
+                @Override
+                public void transferTo(WritableByteChannel target) throws IOException {
+                    ByteBuffer buffer = ByteBuffer.wrap(document);
+                    while (buffer.hasRemaining()) {
+                        target.write(buffer);
+                    }
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        void store(String key, byte[] document) {
+            synchronized (this) {
+                documents.put(key, document);
+            }
+        }
+
+        @Override
+        void delete(String key) {
+            documents.remove(key);
+        }
+    }
+
+    private static final class DiskCache extends RenderCache {
+
+        private static final String EXTENSION = ".docx";
+        private static final String TEMPORARY_EXTENSION = ".tmp";
+        // much longer than writing a document takes, so that another process sharing the directory keeps its own
+        private static final Duration STALE_TEMPORARY_AGE = Duration.ofMinutes(10);
+
+        private final Path directory;
+
+        DiskCache(Path directory, long maxBytes) throws IOException {
+            super(maxBytes);
+            this.directory = Files.createDirectories(directory);
+            deleteStaleTemporaryFiles();
+
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+                stream.forEach(files::add);
+            }
+            Map<Path, FileTime> modified = new LinkedHashMap<>();
+            for (Path file : files) {
+                modified.put(file, Files.getLastModifiedTime(file));
+            }
+            files.sort(Comparator.comparing(modified::get));
+            synchronized (this) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    add(name.substring(0, name.length() - EXTENSION.length()), Files.size(file));
+                }
+                // the maximum size may have been lowered since
+                trim();
+            }
+        }
+
+        /*
+         * The temporary files of documents whose writing was cut short, e.g. by a crash, which would otherwise
+         * take up space outside of the maximum size for good.
+         */
+        private void deleteStaleTemporaryFiles() throws IOException {
+            FileTime staleBefore = FileTime.from(Instant.now().minus(STALE_TEMPORARY_AGE));
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + TEMPORARY_EXTENSION)) {
+                for (Path file : stream) {
+                    try {
+                        if (Files.getLastModifiedTime(file).compareTo(staleBefore) < 0) {
+                            Files.deleteIfExists(file);
+                        }
+                    } catch (NoSuchFileException e) {
+                        // moved in place in the meantime
+                    }
+                }
+            }
+        }
+
+        /*
+         * A file channel, so that a document written to a channel or to a file, e.g. by WordDocumentTemplateParser.fill(File),
+         * is copied by FileChannel.transferTo, which lets the operating system copy the bytes without passing
+         * them through the heap. Other output streams get a plain copy, since a channel over them would be closed
+         * when the rendering thread is interrupted.
+         */
+        @Override
+        Hit open(String key) throws IOException {
+            FileChannel channel;
+            try {
+                channel = FileChannel.open(file(key), StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+            return new Hit() {
+                @Override
+                public void transferTo(OutputStream target) throws IOException {
+                    if (target.getClass() == FileOutputStream.class) {
+                        transferTo(((FileOutputStream) target).getChannel());
+                    } else {
+                        Channels.newInputStream(channel).transferTo(target);
+                    }
+                }
+
+                @Override
+                public void transferTo(WritableByteChannel target) throws IOException {
+                    long size = channel.size();
+                    long position = 0;
+                    while (position < size) {
+                        position += channel.transferTo(position, size - position, target);
+                    }
+                }
+
+                @Override
+                public void close() throws IOException {
+                    channel.close();
+                }
+            };
+        }
+
+        /*
+         * Written to a temporary file first, then moved in place, so that a hit never reads a partly written document.
+         */
+        @Override
+        void store(String key, byte[] document) throws IOException {
+            Path temporary = Files.createTempFile(directory, key, TEMPORARY_EXTENSION);
+            try {
+                Files.write(temporary, document);
+                Files.move(temporary, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+
+        @Override
+        void delete(String key) throws IOException {
+            Files.deleteIfExists(file(key));
+        }
+
+        private Path file(String key) {
+            return directory.resolve(key + EXTENSION);
+        }
+    }
+}
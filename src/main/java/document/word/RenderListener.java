@@ -0,0 +1,57 @@
+package document.word;
+
+/*
+ * Receives the timings and counters of every fill, e.g. to feed a metrics registry. See RenderMetrics
+ * for an in-memory implementation.
+ *
+ * All events of a fill are reported once the fill has completed, on the thread that ran it, so an
+ * implementation shared by concurrent fills must be thread safe. The default does nothing.
+ */
+public interface RenderListener {
+
+    RenderListener NONE = new RenderListener() {};
+
+    enum Phase {
+        /* reading the template into a document, not reported when streaming */
+        LOAD,
+        BODY,
+        HEADERS,
+        FOOTERS,
+        FOOTNOTES,
+        ENDNOTES,
+        /* copying and filling "[]" table rows, which is also part of the phase of the enclosing body */
+        ROW_EXPANSION,
+        /* writing the filled document to the output, or when streaming, copying the parts without template variables */
+        WRITE
+    }
+
+    enum Counter {
+        PLACEHOLDERS_RESOLVED,
+        /* runs merged into the run their placeholder starts in, for placeholders split across runs */
+        RUNS_MERGED,
+        /* table rows added by "[]" variables */
+        ROWS_GENERATED,
+        /* paragraphs added by list variables */
+        PARAGRAPHS_INSERTED,
+        /* values found in the environment or an added VariableSource */
+        FALLBACKS_USED,
+        /* values taken from a ":-" or ":=" default */
+        DEFAULTS_USED
+    }
+
+    /*
+     * Time spent in a phase of a fill. Phases that did not run, e.g. FOOTERS for a document without footers,
+     * are not reported.
+     */
+    default void phaseCompleted(String template, Phase phase, long nanos) {}
+
+    /*
+     * Total of a counter over a fill, only reported if it is not zero.
+     */
+    default void counted(String template, Counter counter, long count) {}
+
+    /*
+     * Called last, with the duration of the whole fill, including failed ones.
+     */
+    default void fillCompleted(String template, long nanos, boolean success) {}
+}
@@ -0,0 +1,194 @@
+package document.word;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * A thread safe RenderListener that adds up the phase timings and counters of all fills, both in total and
+ * per template, and keeps a latency histogram per template, so that a batch or a server can tell which
+ * templates are slow and why.
+ */
+public class RenderMetrics implements RenderListener {
+
+    /*
+     * Upper bounds of the latency histogram buckets, in milliseconds. Fills slower than the last bound
+     * go to an extra overflow bucket.
+     */
+    private static final long[] BUCKET_BOUNDS_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000};
+
+    private final Totals totals = new Totals();
+    private final Map<String, Totals> templateTotals = new ConcurrentHashMap<>();
+    private final Map<String, Latency> latencies = new ConcurrentHashMap<>();
+
+    @Override
+    public void phaseCompleted(String template, Phase phase, long nanos) {
+        totals.phaseNanos.get(phase).add(nanos);
+        templateTotals.computeIfAbsent(template, name -> new Totals()).phaseNanos.get(phase).add(nanos);
+    }
+
+    @Override
+    public void counted(String template, Counter counter, long count) {
+        totals.counts.get(counter).add(count);
+        templateTotals.computeIfAbsent(template, name -> new Totals()).counts.get(counter).add(count);
+    }
+
+    @Override
+    public void fillCompleted(String template, long nanos, boolean success) {
+        latencies.computeIfAbsent(template, name -> new Latency()).record(nanos, success);
+    }
+
+    /*
+     * Total time spent in a phase over all fills.
+     */
+    public long getPhaseNanos(Phase phase) {
+        return totals.phaseNanos.get(phase).sum();
+    }
+
+    /*
+     * Total time spent in a phase over all fills of a template.
+     */
+    public long getPhaseNanos(String template, Phase phase) {
+        Totals result = templateTotals.get(template);
+        return result == null ? 0 : result.phaseNanos.get(phase).sum();
+    }
+
+    public long getCount(Counter counter) {
+        return totals.counts.get(counter).sum();
+    }
+
+    public long getCount(String template, Counter counter) {
+        Totals result = templateTotals.get(template);
+        return result == null ? 0 : result.counts.get(counter).sum();
+    }
+
+    /*
+     * The latency histogram of a template, or null if it has not been filled yet.
+     */
+    public Latency getLatency(String template) {
+        return latencies.get(template);
+    }
+
+    /*
+     * All metrics as nested maps of numbers, e.g. to be written as json.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> templates = new TreeMap<>();
+        templateTotals.forEach((template, templateTotal) -> {
+            Latency latency = latencies.get(template);
+            Map<String, Object> entry = latency == null ? new LinkedHashMap<>() : latency.toMap();
+            templateTotal.putInto(entry);
+            templates.put(template, entry);
+        });
+        latencies.forEach((template, latency) -> templates.putIfAbsent(template, latency.toMap()));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        totals.putInto(result);
+        result.put("templates", templates);
+        return result;
+    }
+
+    /*
+     * Phase timings and counters, of all fills or of the fills of one template.
+     */
+    private static final class Totals {
+        private final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+        private final Map<Counter, LongAdder> counts = new EnumMap<>(Counter.class);
+
+        Totals() {
+            for (Phase phase : Phase.values()) {
+                phaseNanos.put(phase, new LongAdder());
+            }
+            for (Counter counter : Counter.values()) {
+                counts.put(counter, new LongAdder());
+            }
+        }
+
+        void putInto(Map<String, Object> result) {
+            Map<String, Object> phases = new LinkedHashMap<>();
+            for (Phase phase : Phase.values()) {
+                phases.put(phase.name(), TimeUnit.NANOSECONDS.toMillis(phaseNanos.get(phase).sum()));
+            }
+            Map<String, Object> counters = new LinkedHashMap<>();
+            for (Counter counter : Counter.values()) {
+                counters.put(counter.name(), counts.get(counter).sum());
+            }
+            result.put("phaseMillis", phases);
+            result.put("counters", counters);
+        }
+    }
+
+    /*
+     * Fill latencies of one template. Percentiles are approximated by the upper bound of their bucket.
+     */
+    public static class Latency {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos, boolean success) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int bucket = Arrays.binarySearch(BUCKET_BOUNDS_MILLIS, millis);
+            buckets.incrementAndGet(bucket >= 0 ? bucket : -bucket - 1);
+            count.increment();
+            if (!success) failures.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        /*
+         * The bucket bound in milliseconds below which the given fraction of fills completed,
+         * e.g. 0.99 for the 99th percentile, or the maximum if that is in the overflow bucket.
+         */
+        public long getPercentileMillis(double fraction) {
+            long total = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                total += buckets.get(i);
+            }
+            if (total == 0) return 0;
+            long target = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+                seen += buckets.get(i);
+                if (seen >= target) return BUCKET_BOUNDS_MILLIS[i];
+            }
+            return TimeUnit.NANOSECONDS.toMillis(getMaxNanos());
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("count", getCount());
+            result.put("failures", getFailures());
+            result.put("totalMillis", TimeUnit.NANOSECONDS.toMillis(getTotalNanos()));
+            result.put("maxMillis", TimeUnit.NANOSECONDS.toMillis(getMaxNanos()));
+            result.put("p50Millis", getPercentileMillis(0.5));
+            result.put("p99Millis", getPercentileMillis(0.99));
+            return result;
+        }
+    }
+}
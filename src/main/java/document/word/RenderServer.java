@@ -0,0 +1,335 @@
+package document.word;
+
+import document.word.exception.MissingTemplateVariableException;
+import document.word.variable.VariableSource;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+ * A long running HTTP server that renders templates from a template directory, so that callers do not pay
+ * for a JVM start per document and compiled templates stay cached between requests.
+ *
+ *     GET  /health                       server status as json
+ *     GET  /metrics                      phase timings, counters and latencies per template as json, see RenderMetrics
+ *     GET  /variables?template=<file name>  the placeholders of the template as json, see TemplateAnalysis
+ *     POST /render?template=<file name>  json variables in the request body, the rendered docx in the response
+ *
+ * Templates are referred to by their path relative to the template directory, and cannot be outside of it.
+ * A request body larger than the maximum request size is rejected with 413, and not read any further.
+ * Renders, including compiling the template and checking the variables, run on a fixed number of worker
+ * threads with a bounded queue, and so does compiling a template for /variables; a request is rejected with
+ * 503 when the queue is full, and answered with 504 when its work takes longer than the timeout. A render
+ * missing a required variable is answered with 422 before anything is filled.
+ *
+ * A rendered document is kept in memory until it is complete, and only then sent with its length. The status
+ * has to be sent before the body, and the fill can still fail half way, e.g. on a ":?" variable found missing
+ * without validation, or run past the timeout, which could no longer turn into a 422, 500 or 504 once a 200
+ * and part of the document had been sent.
+ */
+public class RenderServer {
+
+    public static final int DEFAULT_MAX_REQUEST_BYTES = 16 * 1024 * 1024;
+
+    private static final String DOCX_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+    private static final int TEMPLATE_CACHE_SIZE = 32;
+    private static final int QUEUED_RENDERS_PER_THREAD = 4;
+    // for the requests other than renders, and renders being rejected
+    private static final int SPARE_DISPATCHER_THREADS = 4;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final ObjectReader VARIABLES_READER = OBJECT_MAPPER.readerFor(Map.class);
+
+    private final HttpServer server;
+    private final ExecutorService dispatcher;
+    private final ThreadPoolExecutor workers;
+    private final File templateDir;
+    private final Map<String, Object> variables;
+    private final boolean checkEnvVar;
+    private final long timeoutMillis;
+    private final TemplateCache templateCache = new TemplateCache(TEMPLATE_CACHE_SIZE);
+    private final List<VariableSource> variableSources = new CopyOnWriteArrayList<>();
+    private final RenderMetrics metrics = new RenderMetrics();
+    private volatile RenderCache renderCache;
+    private volatile int maxRequestBytes = DEFAULT_MAX_REQUEST_BYTES;
+
+    /*
+     * The given variables are shared by all requests, which can override them.
+     */
+    public RenderServer(InetSocketAddress address, File templateDir, Map<String, Object> variables, boolean checkEnvVar,
+            int threads, long timeoutMillis) throws IOException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Number of threads must be positive: " + threads);
+        }
+        if (!templateDir.isDirectory()) {
+            throw new IOException("Not a directory: " + templateDir);
+        }
+        this.templateDir = templateDir.getCanonicalFile();
+        this.variables = new HashMap<>(variables);
+        this.checkEnvVar = checkEnvVar;
+        this.timeoutMillis = timeoutMillis;
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads * QUEUED_RENDERS_PER_THREAD));
+        // a render or variables request holds its dispatcher thread until its worker is done, so there is one for
+        // every task running or queued; any further connections wait in the queue of the dispatcher
+        this.dispatcher = Executors.newFixedThreadPool(threads * (1 + QUEUED_RENDERS_PER_THREAD) + SPARE_DISPATCHER_THREADS);
+        this.server = HttpServer.create(address, 0);
+        this.server.setExecutor(dispatcher);
+        this.server.createContext("/health", this::handleHealth);
+        this.server.createContext("/metrics", this::handleMetrics);
+        this.server.createContext("/variables", this::handleVariables);
+        this.server.createContext("/render", this::handleRender);
+    }
+
+    /*
+     * See WordDocumentTemplateParser.addVariableSource.
+     */
+    public void addVariableSource(VariableSource source) {
+        variableSources.add(source);
+    }
+
+    /*
+     * See WordDocumentTemplateParser.setRenderCache. Its counters are then part of /metrics, under "cache".
+     */
+    public void setRenderCache(RenderCache renderCache) {
+        this.renderCache = renderCache;
+    }
+
+    /*
+     * The largest request body accepted, in bytes, DEFAULT_MAX_REQUEST_BYTES by default.
+     */
+    public void setMaxRequestBytes(int maxRequestBytes) {
+        if (maxRequestBytes <= 0) {
+            throw new IllegalArgumentException("Maximum request size must be positive: " + maxRequestBytes);
+        }
+        this.maxRequestBytes = maxRequestBytes;
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /*
+     * Stop accepting requests, and give running renders up to the timeout to complete.
+     */
+    public void stop() {
+        server.stop(0);
+        workers.shutdown();
+        try {
+            workers.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdownNow();
+        dispatcher.shutdown();
+    }
+
+    public RenderMetrics getMetrics() {
+        return metrics;
+    }
+
+    /*
+     * The port the server listens on, which is useful when it was started on port 0.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendText(exchange, 405, "Method not allowed");
+                return;
+            }
+            Map<String, Object> status = Map.of(
+                    "status", "UP",
+                    "activeRenders", workers.getActiveCount(),
+                    "queuedRenders", workers.getQueue().size(),
+                    "cachedTemplates", templateCache.size());
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            send(exchange, 200, OBJECT_MAPPER.writeValueAsBytes(status));
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendText(exchange, 405, "Method not allowed");
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            Map<String, Object> result = metrics.toMap();
+            RenderCache cache = renderCache;
+            if (cache != null) {
+                result = new LinkedHashMap<>(result);
+                result.put("cache", cache.toMap());
+            }
+            send(exchange, 200, OBJECT_MAPPER.writeValueAsBytes(result));
+        }
+    }
+
+    private void handleVariables(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendText(exchange, 405, "Method not allowed");
+                return;
+            }
+            File template = findTemplate(queryParameter(exchange, "template"));
+            if (template == null) {
+                sendText(exchange, 404, "Template not found");
+                return;
+            }
+            List<Placeholder> placeholders = runOnWorker(exchange, () -> templateCache.get(template).getPlaceholders(), "Could not read template: ");
+            if (placeholders == null) return;
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            send(exchange, 200, OBJECT_MAPPER.writeValueAsBytes(placeholders));
+        }
+    }
+
+    private void handleRender(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendText(exchange, 405, "Method not allowed");
+                return;
+            }
+            String templateName = queryParameter(exchange, "template");
+            File template = findTemplate(templateName);
+            if (template == null) {
+                sendText(exchange, 404, "Template not found");
+                return;
+            }
+
+            int maxBytes = maxRequestBytes;
+            Map<String, Object> requestVariables = new HashMap<>(variables);
+            try (InputStream inputStream = exchange.getRequestBody()) {
+                // one byte more than allowed, to tell a body that is too large without reading all of it
+                byte[] body = inputStream.readNBytes(maxBytes + 1);
+                if (body.length > maxBytes) {
+                    sendText(exchange, 413, "Request body larger than " + maxBytes + " bytes");
+                    return;
+                }
+                if (body.length > 0) {
+                    Map<String, Object> parsed = VARIABLES_READER.readValue(body);
+                    requestVariables.putAll(parsed);
+                }
+            } catch (JsonProcessingException e) {
+                sendText(exchange, 400, "Invalid json variables: " + e.getOriginalMessage());
+                return;
+            }
+
+            byte[] document = runOnWorker(exchange, () -> render(template, templateName, requestVariables), "Render failed: ");
+            if (document == null) return;
+            exchange.getResponseHeaders().set("Content-Type", DOCX_CONTENT_TYPE);
+            send(exchange, 200, document);
+        }
+    }
+
+    /*
+     * The result of the task, run by a worker within the timeout, or null if it was rejected, timed out or
+     * failed, in which case the request has been answered already.
+     */
+    private <T> T runOnWorker(HttpExchange exchange, Callable<T> task, String failureMessage) throws IOException {
+        Future<T> result;
+        try {
+            result = workers.submit(task);
+        } catch (RejectedExecutionException e) {
+            sendText(exchange, 503, "Too many renders in progress");
+            return null;
+        }
+
+        try {
+            return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // the task cannot be stopped half way, but its result is dropped
+            result.cancel(true);
+            sendText(exchange, 504, "Render timed out");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            sendText(exchange, 503, "Server is stopping");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof MissingTemplateVariableException) {
+                sendText(exchange, 422, e.getCause().getMessage());
+            } else {
+                sendText(exchange, 500, failureMessage + e.getCause());
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Run by a worker, so that compiling a template, which the first render of a large template spends most
+     * of its time on, and validating the variables count towards the number of renders and the timeout.
+     */
+    private byte[] render(File template, String templateName, Map<String, Object> requestVariables) throws IOException {
+        WordDocumentTemplateParser parser = new WordDocumentTemplateParser(templateCache.get(template), requestVariables, checkEnvVar);
+        variableSources.forEach(parser::addVariableSource);
+        parser.setRenderListener(templateName, metrics);
+        parser.setRenderCache(renderCache);
+        List<Placeholder> missing = parser.validate();
+        if (!missing.isEmpty()) {
+            throw VariableResolver.missingVariables(missing);
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        parser.fill(outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /*
+     * The template file, or null if there is no such file inside the template directory.
+     */
+    private File findTemplate(String name) throws IOException {
+        if (name == null || name.isEmpty()) return null;
+        File file = new File(templateDir, name).getCanonicalFile();
+        if (!file.toPath().startsWith(templateDir.toPath()) || !file.isFile()) return null;
+        return file;
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return null;
+        for (String parameter : query.split("&")) {
+            int separator = parameter.indexOf('=');
+            String key = separator < 0 ? parameter : parameter.substring(0, separator);
+            if (URLDecoder.decode(key, StandardCharsets.UTF_8).equals(name)) {
+                return separator < 0 ? "" : URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String message) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        send(exchange, status, message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package document.word;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import javax.xml.stream.XMLStreamException;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+
+/*
+ * Renders the same template over and over while its variables change a few at a time, e.g. for a live preview.
+ *
+ * The template parts are split once into their body level paragraphs and table rows, each with the names of the
+ * variables it refers to. An update only renders the paragraphs and rows that refer to a changed variable again,
+ * reusing the xml of all others, and only compresses the parts that changed. The output is the same as
+ * StreamingWordDocumentTemplateParser with the current variables.
+ *
+ * A session is not thread safe.
+ */
+public class RenderSession {
+
+    private final byte[] template;
+    private final Map<String, Object> variables;
+    private final boolean checkEnvVar;
+    private final StreamingPartRewriter rewriter = new StreamingPartRewriter();
+    private final List<String> entryOrder;
+    private final Map<String, TemplatePart> templateParts = new LinkedHashMap<>();
+    private Set<String> lastRenderedParts = Set.of();
+
+    public RenderSession(File template, Map<String, Object> variables, boolean checkEnvVar) throws IOException {
+        this(template.toPath(), variables, checkEnvVar);
+    }
+
+    public RenderSession(Path template, Map<String, Object> variables, boolean checkEnvVar) throws IOException {
+        this(Files.readAllBytes(template), variables, checkEnvVar);
+    }
+
+    /*
+     * The template is split and rendered with the given variables right away.
+     */
+    public RenderSession(byte[] template, Map<String, Object> variables, boolean checkEnvVar) throws IOException {
+        this.template = template;
+        this.variables = new HashMap<>(variables);
+        this.variables.put("$", "$");
+        this.checkEnvVar = checkEnvVar;
+
+        try (ZipFile zipFile = new ZipFile(new SeekableInMemoryByteChannel(template))) {
+            Set<String> parts = StreamingWordDocumentTemplateParser.findTemplateParts(zipFile);
+            this.entryOrder = new ArrayList<>(StreamingWordDocumentTemplateParser.entryOrder(zipFile, parts));
+            for (String name : parts) {
+                ZipArchiveEntry entry = zipFile.getEntry(name);
+                if (entry == null) continue;
+
+                StreamingPartRewriter.PartSource partSource = () -> zipFile.getInputStream(entry);
+                StreamingPartRewriter.PartScan scan = rewriter.scan(partSource);
+                if (scan.mayContainTemplateVariables()) {
+                    templateParts.put(name, new TemplatePart(entry, scan.assignments, rewriter.split(partSource)));
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        render(null);
+    }
+
+    /*
+     * Apply changed variables, where a null value removes a variable, and render whatever depends on them.
+     * If rendering fails, e.g. because a mandatory variable was removed, the session is left unchanged.
+     */
+    public void update(Map<String, ?> changes) throws IOException {
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, ?> change : changes.entrySet()) {
+            if (!Objects.equals(variables.get(change.getKey()), change.getValue())) {
+                changed.add(change.getKey());
+            }
+        }
+        if (changed.isEmpty()) {
+            lastRenderedParts = Set.of();
+            return;
+        }
+
+        Map<String, Object> previous = new HashMap<>(variables);
+        for (String name : changed) {
+            Object value = changes.get(name);
+            if (value == null) {
+                variables.remove(name);
+            } else {
+                variables.put(name, value);
+            }
+        }
+        try {
+            render(changed);
+        } catch (IOException | RuntimeException e) {
+            variables.clear();
+            variables.putAll(previous);
+            throw e;
+        }
+    }
+
+    /*
+     * The names of the parts, e.g. "word/document.xml", rendered again by the last update.
+     */
+    public Set<String> getLastRenderedParts() {
+        return lastRenderedParts;
+    }
+
+    public void fill(File output) throws IOException {
+        try (OutputStream outputStream = new FileOutputStream(output)) {
+            fill(outputStream);
+        }
+    }
+
+    /*
+     * Write the document for the current variables. The output stream is left open.
+     */
+    public void fill(OutputStream output) throws IOException {
+        try (ZipFile zipFile = new ZipFile(new SeekableInMemoryByteChannel(template))) {
+            ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(new NonClosingOutputStream(output));
+            for (String name : entryOrder) {
+                TemplatePart part = templateParts.get(name);
+                if (part != null) {
+                    zipOutputStream.addRawArchiveEntry(part.compressed.entry, new ByteArrayInputStream(part.compressed.data));
+                    continue;
+                }
+                ZipArchiveEntry entry = zipFile.getEntry(name);
+                if (entry != null) {
+                    StreamingWordDocumentTemplateParser.copyEntry(zipFile, entry, zipOutputStream, true);
+                }
+            }
+            zipOutputStream.finish();
+            zipOutputStream.flush();
+        }
+    }
+
+    /*
+     * Render the blocks that refer to any of the changed variables, or all blocks if changed is null.
+     *
+     * Variables assigned by ":=" carry over from one block to the next, and from one part to the next, so the
+     * blocks that are not rendered again still apply their assignments, in the same order as a full render.
+     */
+    private void render(Set<String> changed) throws IOException {
+        VariableResolver resolver = VariableResolver.forRender(variables, checkEnvVar, List.of());
+        Map<Block, byte[]> rendered = new IdentityHashMap<>();
+        Map<TemplatePart, CompressedPart> compressed = new LinkedHashMap<>();
+
+        try {
+            for (TemplatePart part : templateParts.values()) {
+                boolean partChanged = false;
+                int bodyIndex = -1;
+                VariableResolver tableResolver = null;
+                for (Block block : part.blocks) {
+                    if (block.segment.bodyIndex != bodyIndex) {
+                        bodyIndex = block.segment.bodyIndex;
+                        if (tableResolver != null) resolver.merge(tableResolver);
+                        tableResolver = null;
+                    }
+                    boolean dirty = changed == null || !Collections.disjoint(block.names, changed);
+                    partChanged |= dirty;
+
+                    if (block.segment.row) {
+                        if (tableResolver == null) {
+                            tableResolver = resolver.copy();
+                            for (PlaceholderToken assignment : part.assignments.get(bodyIndex)) {
+                                tableResolver.resolve(assignment);
+                            }
+                        }
+                        if (dirty) {
+                            rendered.put(block, rewriter.renderBlock(block.segment, tableResolver));
+                        } else {
+                            tableResolver.rowGroup(block.tokens);
+                        }
+                    } else if (dirty) {
+                        rendered.put(block, rewriter.renderBlock(block.segment, resolver));
+                    } else {
+                        for (PlaceholderToken token : block.tokens) {
+                            if (token.hasModifier('=')) {
+                                resolver.resolve(token);
+                            }
+                        }
+                    }
+                }
+                if (tableResolver != null) resolver.merge(tableResolver);
+                if (partChanged) {
+                    compressed.put(part, part.compress(rendered));
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+
+        Set<String> renderedParts = new LinkedHashSet<>();
+        for (Map.Entry<Block, byte[]> entry : rendered.entrySet()) {
+            entry.getKey().xml = entry.getValue();
+        }
+        for (Map.Entry<TemplatePart, CompressedPart> entry : compressed.entrySet()) {
+            entry.getKey().compressed = entry.getValue();
+            renderedParts.add(entry.getKey().original.getName());
+        }
+        lastRenderedParts = Collections.unmodifiableSet(renderedParts);
+    }
+
+    private static final class TemplatePart {
+        final ZipArchiveEntry original;
+        final List<List<PlaceholderToken>> assignments;
+        final List<StreamingPartRewriter.Segment> segments;
+        final List<Block> blocks = new ArrayList<>();
+        final Map<StreamingPartRewriter.Segment, Block> blocksBySegment = new IdentityHashMap<>();
+        CompressedPart compressed;
+
+        TemplatePart(ZipArchiveEntry original, List<List<PlaceholderToken>> assignments, List<StreamingPartRewriter.Segment> segments) {
+            this.original = original;
+            this.assignments = assignments;
+            this.segments = segments;
+            for (StreamingPartRewriter.Segment segment : segments) {
+                if (segment.isBlock()) {
+                    Block block = new Block(segment);
+                    blocks.add(block);
+                    blocksBySegment.put(segment, block);
+                }
+            }
+        }
+
+        /*
+         * The compressed xml of the part, with the blocks just rendered taking the place of their previous xml.
+         */
+        CompressedPart compress(Map<Block, byte[]> rendered) throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            CRC32 crc = new CRC32();
+            long size = 0;
+            // favour speed over size, since the part is compressed again on every change
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+            try (DeflaterOutputStream outputStream = new DeflaterOutputStream(buffer, deflater)) {
+                for (StreamingPartRewriter.Segment segment : segments) {
+                    byte[] xml = segment.xml;
+                    if (segment.isBlock()) {
+                        Block block = blocksBySegment.get(segment);
+                        xml = rendered.getOrDefault(block, block.xml);
+                    }
+                    crc.update(xml);
+                    outputStream.write(xml);
+                    size += xml.length;
+                }
+            } finally {
+                deflater.end();
+            }
+
+            ZipArchiveEntry entry = new ZipArchiveEntry(original.getName());
+            entry.setMethod(ZipEntry.DEFLATED);
+            entry.setTime(original.getTime());
+            entry.setSize(size);
+            entry.setCompressedSize(buffer.size());
+            entry.setCrc(crc.getValue());
+            return new CompressedPart(entry, buffer.toByteArray());
+        }
+    }
+
+    private static final class CompressedPart {
+        final ZipArchiveEntry entry;
+        final byte[] data;
+
+        CompressedPart(ZipArchiveEntry entry, byte[] data) {
+            this.entry = entry;
+            this.data = data;
+        }
+    }
+
+    private static final class Block {
+        final StreamingPartRewriter.Segment segment;
+        final List<PlaceholderToken> tokens;
+        final Set<String> names = new HashSet<>();
+        byte[] xml;
+
+        Block(StreamingPartRewriter.Segment segment) {
+            this.segment = segment;
+            this.tokens = segment.row
+                    ? ElementTemplateProcessor.rowTemplateVariables(segment.element)
+                    : PlaceholderScanner.scan(ElementTemplateProcessor.paragraphText(segment.element));
+            for (PlaceholderToken token : tokens) {
+                names.add(token.name());
+            }
+        }
+    }
+}
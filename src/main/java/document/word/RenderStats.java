@@ -0,0 +1,54 @@
+package document.word;
+
+/*
+ * The timings and counters of a single fill, reported to a RenderListener once the fill has completed.
+ *
+ * Counting goes to plain fields so that it costs next to nothing when nobody listens; like the
+ * VariableResolver that carries it, a RenderStats belongs to one fill and is not thread safe.
+ */
+final class RenderStats {
+
+    private final long[] phaseNanos = new long[RenderListener.Phase.values().length];
+    private final boolean[] phaseRan = new boolean[phaseNanos.length];
+    private final long[] counts = new long[RenderListener.Counter.values().length];
+
+    void addTime(RenderListener.Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()] += nanos;
+        phaseRan[phase.ordinal()] = true;
+    }
+
+    void count(RenderListener.Counter counter, long count) {
+        counts[counter.ordinal()] += count;
+    }
+
+    /*
+     * Add the timings and counters of a part of the fill, counted separately on another thread.
+     */
+    void add(RenderStats other) {
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] += other.phaseNanos[i];
+            phaseRan[i] |= other.phaseRan[i];
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+    }
+
+    long getCount(RenderListener.Counter counter) {
+        return counts[counter.ordinal()];
+    }
+
+    void report(RenderListener listener, String template, long nanos, boolean success) {
+        for (RenderListener.Phase phase : RenderListener.Phase.values()) {
+            if (phaseRan[phase.ordinal()]) {
+                listener.phaseCompleted(template, phase, phaseNanos[phase.ordinal()]);
+            }
+        }
+        for (RenderListener.Counter counter : RenderListener.Counter.values()) {
+            if (counts[counter.ordinal()] != 0) {
+                listener.counted(template, counter, counts[counter.ordinal()]);
+            }
+        }
+        listener.fillCompleted(template, nanos, success);
+    }
+}
@@ -0,0 +1,420 @@
+package document.word;
+
+import static document.word.ElementTemplateProcessor.W_NS;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/*
+ * Rewrites a single document, header, footer, footnotes or endnotes part with a StAX event pipeline.
+ *
+ * Only one top level w:p or w:tr is held in memory at a time, as a small DOM element handed to
+ * ElementTemplateProcessor; every other event is copied to the output as it is read.
+ *
+ * The XWPF based parser handles all paragraphs of a body before its tables, so a table sees the ":="
+ * assignments of paragraphs that come after it. To keep that behaviour without buffering the part,
+ * the part is read twice: the first pass only records the ":=" placeholders of every body's paragraphs.
+ * The tables of a body are filled with a copy of the resolver with those applied, which is merged back
+ * once the body is done, so that later bodies and parts see the assignments of the table rows.
+ */
+final class StreamingPartRewriter {
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newFactory();
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+    private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newFactory();
+    private static final DocumentBuilderFactory DOCUMENT_BUILDER_FACTORY = DocumentBuilderFactory.newInstance();
+
+    static {
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        DOCUMENT_BUILDER_FACTORY.setNamespaceAware(true);
+    }
+
+    @FunctionalInterface
+    interface PartSource {
+        InputStream open() throws IOException;
+    }
+
+    private final Document document;
+
+    StreamingPartRewriter() {
+        try {
+            this.document = DOCUMENT_BUILDER_FACTORY.newDocumentBuilder().newDocument();
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+     * Rewrite the part into the output stream, which is left open.
+     */
+    void rewrite(PartSource source, PartScan scan, OutputStream output, VariableResolver resolver) throws IOException, XMLStreamException {
+        List<List<PlaceholderToken>> assignments = scan.assignments;
+
+        try (InputStream inputStream = source.open()) {
+            XMLEventReader reader = INPUT_FACTORY.createXMLEventReader(inputStream);
+            XMLEventWriter writer = OUTPUT_FACTORY.createXMLEventWriter(output, "UTF-8");
+            List<QName> path = new ArrayList<>();
+            int bodyIndex = -1;
+            VariableResolver tableResolver = null;
+
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement()) {
+                    StartElement start = event.asStartElement();
+                    QName name = start.getName();
+                    if (isBody(name, path)) {
+                        bodyIndex++;
+                        if (tableResolver != null) resolver.merge(tableResolver);
+                        tableResolver = null;
+                    } else if (isBodyParagraph(name, path)) {
+                        DocumentFragment fragment = document.createDocumentFragment();
+                        Element paragraph = readElement(start, reader);
+                        fragment.appendChild(paragraph);
+                        ElementTemplateProcessor.processParagraph(paragraph, resolver);
+                        writeChildren(fragment, writer);
+                        continue;
+                    } else if (isBodyTableRow(name, path)) {
+                        if (tableResolver == null) {
+                            tableResolver = resolver.copy();
+                            for (PlaceholderToken assignment : assignments.get(bodyIndex)) {
+                                tableResolver.resolve(assignment);
+                            }
+                        }
+                        ElementTemplateProcessor.streamRow(readElement(start, reader), tableResolver, row -> writeElement(row, writer));
+                        continue;
+                    }
+                    path.add(name);
+                } else if (event.isEndElement()) {
+                    path.remove(path.size() - 1);
+                }
+                writer.add(event);
+            }
+            if (tableResolver != null) resolver.merge(tableResolver);
+            // the writer is not closed, since that may close the zip output stream
+            writer.flush();
+            reader.close();
+        }
+    }
+
+    /*
+     * The first pass over a part, which records the ":=" placeholders of every body's paragraphs,
+     * and whether the part contains a dollar sign at all.
+     */
+    PartScan scan(PartSource source) throws IOException, XMLStreamException {
+        PartScan result = new PartScan();
+        try (InputStream inputStream = source.open()) {
+            XMLEventReader reader = INPUT_FACTORY.createXMLEventReader(inputStream);
+            List<QName> path = new ArrayList<>();
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement()) {
+                    StartElement start = event.asStartElement();
+                    QName name = start.getName();
+                    if (isBody(name, path)) {
+                        result.assignments.add(new ArrayList<>());
+                    } else if (isBodyParagraph(name, path)) {
+                        String text = ElementTemplateProcessor.paragraphText(readElement(start, reader));
+                        result.hasDollarSign |= text.indexOf('$') >= 0;
+                        for (PlaceholderToken token : PlaceholderScanner.scan(text)) {
+                            if (token.hasModifier('=')) {
+                                result.assignments.get(result.assignments.size() - 1).add(token);
+                            }
+                        }
+                        continue;
+                    }
+                    path.add(name);
+                } else if (event.isEndElement()) {
+                    path.remove(path.size() - 1);
+                } else if (event.isCharacters()) {
+                    result.hasDollarSign |= event.asCharacters().getData().indexOf('$') >= 0;
+                }
+            }
+            reader.close();
+        }
+        return result;
+    }
+
+    /*
+     * Add every placeholder of the part to the result, in document order, each located by the body level
+     * paragraph or table row it is in. Used by TemplateAnalysis.
+     */
+    void collectPlaceholders(PartSource source, String partName, List<Placeholder> result, List<MalformedPlaceholder> malformed)
+            throws IOException, XMLStreamException {
+        try (InputStream inputStream = source.open()) {
+            XMLEventReader reader = INPUT_FACTORY.createXMLEventReader(inputStream);
+            List<QName> path = new ArrayList<>();
+            int paragraphs = 0, tables = 0, rows = 0;
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement()) {
+                    StartElement start = event.asStartElement();
+                    QName name = start.getName();
+                    if (isBodyParagraph(name, path)) {
+                        String location = "paragraph " + ++paragraphs;
+                        collectPlaceholders(ElementTemplateProcessor.paragraphText(readElement(start, reader)), partName, location, result, malformed);
+                        continue;
+                    } else if (isBodyTableRow(name, path)) {
+                        String location = "table " + tables + ", row " + ++rows;
+                        for (String text : ElementTemplateProcessor.rowParagraphTexts(readElement(start, reader))) {
+                            collectPlaceholders(text, partName, location, result, malformed);
+                        }
+                        continue;
+                    } else if (isW(name, "tbl") && !path.isEmpty() && isBody(path.get(path.size() - 1), path.subList(0, path.size() - 1))) {
+                        tables++;
+                        rows = 0;
+                    }
+                    path.add(name);
+                } else if (event.isEndElement()) {
+                    path.remove(path.size() - 1);
+                }
+            }
+            reader.close();
+        }
+    }
+
+    private static void collectPlaceholders(String text, String partName, String location, List<Placeholder> result,
+            List<MalformedPlaceholder> malformed) {
+        for (PlaceholderToken token : PlaceholderScanner.scan(text)) {
+            result.add(new Placeholder(token.name(), token.modifier(), partName, location));
+        }
+        for (int offset : PlaceholderScanner.findMalformed(text)) {
+            malformed.add(new MalformedPlaceholder(PlaceholderScanner.excerpt(text, offset), partName, location));
+        }
+    }
+
+    /*
+     * Split the part into the xml between body level paragraphs and table rows, and those paragraphs and rows
+     * themselves as DOM elements, so that they can be rendered one by one with renderBlock. Used by RenderSession.
+     */
+    List<Segment> split(PartSource source) throws IOException, XMLStreamException {
+        List<Segment> result = new ArrayList<>();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (InputStream inputStream = source.open()) {
+            XMLEventReader reader = INPUT_FACTORY.createXMLEventReader(inputStream);
+            XMLEventWriter writer = OUTPUT_FACTORY.createXMLEventWriter(buffer, "UTF-8");
+            List<QName> path = new ArrayList<>();
+            int bodyIndex = -1;
+
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement()) {
+                    StartElement start = event.asStartElement();
+                    QName name = start.getName();
+                    if (isBody(name, path)) {
+                        bodyIndex++;
+                    } else if (isBodyParagraph(name, path) || isBodyTableRow(name, path)) {
+                        boolean row = isBodyTableRow(name, path);
+                        // empty characters make the writer close the parent's start tag before the xml so far is taken
+                        writer.add(EVENT_FACTORY.createCharacters(""));
+                        writer.flush();
+                        result.add(new Segment(buffer.toByteArray(), null, false, bodyIndex));
+                        buffer.reset();
+                        result.add(new Segment(null, readElement(start, reader), row, bodyIndex));
+                        continue;
+                    }
+                    path.add(name);
+                } else if (event.isEndElement()) {
+                    path.remove(path.size() - 1);
+                }
+                writer.add(event);
+            }
+            writer.flush();
+            result.add(new Segment(buffer.toByteArray(), null, false, bodyIndex));
+            reader.close();
+        }
+        return result;
+    }
+
+    /*
+     * Process a copy of a block returned by split, and return its xml, which for a paragraph includes the
+     * paragraphs inserted for list values and for a table row includes the generated rows. A table row must be
+     * given the table resolver of its body, i.e. a copy of the resolver with the body's ":=" assignments applied.
+     */
+    byte[] renderBlock(Segment block, VariableResolver resolver) throws XMLStreamException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        XMLEventWriter writer = OUTPUT_FACTORY.createXMLEventWriter(buffer, "UTF-8");
+        Element element = (Element) block.element.cloneNode(true);
+        if (block.row) {
+            for (Element row : ElementTemplateProcessor.processRow(element, resolver)) {
+                writeElement(row, writer);
+            }
+        } else {
+            DocumentFragment fragment = document.createDocumentFragment();
+            fragment.appendChild(element);
+            ElementTemplateProcessor.processParagraph(element, resolver);
+            writeChildren(fragment, writer);
+        }
+        writer.flush();
+        return buffer.toByteArray();
+    }
+
+    /*
+     * Either a piece of xml copied as is, or a body level paragraph or table row.
+     */
+    static final class Segment {
+        final byte[] xml;
+        final Element element;
+        final boolean row;
+        final int bodyIndex;
+
+        Segment(byte[] xml, Element element, boolean row, int bodyIndex) {
+            this.xml = xml;
+            this.element = element;
+            this.row = row;
+            this.bodyIndex = bodyIndex;
+        }
+
+        boolean isBlock() {
+            return element != null;
+        }
+    }
+
+    static class PartScan {
+        final List<List<PlaceholderToken>> assignments = new ArrayList<>();
+        boolean hasDollarSign;
+
+        /*
+         * A part without any dollar sign cannot hold a template variable, so rewriting it would not change anything.
+         */
+        boolean mayContainTemplateVariables() {
+            return hasDollarSign;
+        }
+    }
+
+    /*
+     * The elements handled by the XWPF based parser as an IBody: w:body, w:hdr, w:ftr, w:footnote and w:endnote.
+     */
+    private static boolean isBody(QName name, List<QName> path) {
+        if (!W_NS.equals(name.getNamespaceURI())) return false;
+        QName parent = path.isEmpty() ? null : path.get(path.size() - 1);
+        return switch (name.getLocalPart()) {
+            case "hdr", "ftr" -> parent == null;
+            case "body" -> isW(parent, "document");
+            case "footnote" -> isW(parent, "footnotes");
+            case "endnote" -> isW(parent, "endnotes");
+            default -> false;
+        };
+    }
+
+    private static boolean isBodyParagraph(QName name, List<QName> path) {
+        return isW(name, "p") && !path.isEmpty() && isBody(path.get(path.size() - 1), path.subList(0, path.size() - 1));
+    }
+
+    private static boolean isBodyTableRow(QName name, List<QName> path) {
+        return isW(name, "tr") && path.size() >= 2 && isW(path.get(path.size() - 1), "tbl")
+                && isBody(path.get(path.size() - 2), path.subList(0, path.size() - 2));
+    }
+
+    private static boolean isW(QName name, String localName) {
+        return name != null && W_NS.equals(name.getNamespaceURI()) && localName.equals(name.getLocalPart());
+    }
+
+    /*
+     * Read the element that has just been started, up to and including its end tag, into a DOM element.
+     */
+    private Element readElement(StartElement start, XMLEventReader reader) throws XMLStreamException {
+        Element root = createElement(start);
+        Node current = root;
+        while (current != null) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                current = current.appendChild(createElement(event.asStartElement()));
+            } else if (event.isEndElement()) {
+                current = current == root ? null : current.getParentNode();
+            } else if (event.isCharacters()) {
+                current.appendChild(document.createTextNode(event.asCharacters().getData()));
+            }
+        }
+        return root;
+    }
+
+    private Element createElement(StartElement start) {
+        QName name = start.getName();
+        Element element = document.createElementNS(emptyToNull(name.getNamespaceURI()), qualifiedName(name.getPrefix(), name.getLocalPart()));
+        for (Iterator<Namespace> it = start.getNamespaces(); it.hasNext(); ) {
+            Namespace namespace = it.next();
+            String prefix = namespace.getPrefix();
+            element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, qualifiedName(XMLConstants.XMLNS_ATTRIBUTE, prefix), namespace.getNamespaceURI());
+        }
+        for (Iterator<Attribute> it = start.getAttributes(); it.hasNext(); ) {
+            Attribute attribute = it.next();
+            QName attributeName = attribute.getName();
+            element.setAttributeNS(emptyToNull(attributeName.getNamespaceURI()), qualifiedName(attributeName.getPrefix(), attributeName.getLocalPart()), attribute.getValue());
+        }
+        return element;
+    }
+
+    private static void writeChildren(Node parent, XMLEventWriter writer) throws XMLStreamException {
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element element) {
+                writeElement(element, writer);
+            }
+        }
+    }
+
+    private static void writeElement(Element element, XMLEventWriter writer) throws XMLStreamException {
+        List<Attribute> attributes = new ArrayList<>();
+        List<Namespace> namespaces = new ArrayList<>();
+        NamedNodeMap attributeNodes = element.getAttributes();
+        for (int i = 0; i < attributeNodes.getLength(); i++) {
+            Attr attribute = (Attr) attributeNodes.item(i);
+            if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attribute.getNamespaceURI())) {
+                String prefix = attribute.getPrefix() == null ? "" : attribute.getLocalName();
+                namespaces.add(EVENT_FACTORY.createNamespace(prefix, attribute.getValue()));
+            } else {
+                attributes.add(EVENT_FACTORY.createAttribute(nullToEmpty(attribute.getPrefix()), nullToEmpty(attribute.getNamespaceURI()),
+                        attribute.getLocalName(), attribute.getValue()));
+            }
+        }
+
+        String prefix = nullToEmpty(element.getPrefix());
+        String namespaceUri = nullToEmpty(element.getNamespaceURI());
+        writer.add(EVENT_FACTORY.createStartElement(prefix, namespaceUri, element.getLocalName(), attributes.iterator(), namespaces.iterator()));
+        for (Node node = element.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element child) {
+                writeElement(child, writer);
+            } else if (node.getNodeType() == Node.TEXT_NODE || node.getNodeType() == Node.CDATA_SECTION_NODE) {
+                writer.add(EVENT_FACTORY.createCharacters(node.getNodeValue()));
+            }
+        }
+        writer.add(EVENT_FACTORY.createEndElement(prefix, namespaceUri, element.getLocalName()));
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,326 @@
+package document.word;
+
+import document.word.variable.VariableSource;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+
+/*
+ * An alternative to WordDocumentTemplateParser for very large documents.
+ *
+ * Instead of loading the whole package into XWPF, the zip is copied entry by entry, and only the
+ * main document, headers, footers, footnotes and endnotes are rewritten through a StAX event pipeline
+ * that holds one top level paragraph or table row at a time. Memory use therefore stays roughly
+ * constant no matter how big the document is.
+ *
+ * Template variables are handled the same way as in WordDocumentTemplateParser.
+ */
+public class StreamingWordDocumentTemplateParser {
+
+    private static final String CONTENT_TYPES = "[Content_Types].xml";
+    private static final String CONTENT_TYPE_PREFIX = "application/vnd.openxmlformats-officedocument.wordprocessingml.";
+    private static final String MACRO_CONTENT_TYPE_PREFIX = "application/vnd.ms-word.";
+
+    /*
+     * Part content type suffixes, in the order the parts are processed.
+     */
+    private static final List<String> TEMPLATE_PART_TYPES = List.of("document.main+xml", "template.main+xml", "document.macroEnabled.main+xml",
+            "template.macroEnabledTemplate.main+xml", "header+xml", "footer+xml", "footnotes+xml", "endnotes+xml");
+    /*
+     * The phase each of the part types above is reported under.
+     */
+    private static final List<RenderListener.Phase> TEMPLATE_PART_PHASES = List.of(RenderListener.Phase.BODY, RenderListener.Phase.BODY,
+            RenderListener.Phase.BODY, RenderListener.Phase.BODY, RenderListener.Phase.HEADERS, RenderListener.Phase.FOOTERS,
+            RenderListener.Phase.FOOTNOTES, RenderListener.Phase.ENDNOTES);
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newFactory();
+
+    static {
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final TemplateSource source;
+    private final Map<String, Object> variables;
+    private final boolean checkEnvVar;
+    private final List<VariableSource> variableSources = new CopyOnWriteArrayList<>();
+    private boolean rawCopy = true;
+    private boolean validation;
+    private String templateName = "template";
+    private RenderListener listener = RenderListener.NONE;
+    private volatile TemplateAnalysis analysis;
+
+    public StreamingWordDocumentTemplateParser(File source, Map<String, Object> variables, boolean checkEnvVar) {
+        this(source.toPath(), variables, checkEnvVar);
+    }
+
+    public StreamingWordDocumentTemplateParser(Path source, Map<String, Object> variables, boolean checkEnvVar) {
+        this(() -> Files.newByteChannel(source, StandardOpenOption.READ), variables, checkEnvVar);
+    }
+
+    public StreamingWordDocumentTemplateParser(byte[] source, Map<String, Object> variables, boolean checkEnvVar) {
+        this(() -> new SeekableInMemoryByteChannel(source), variables, checkEnvVar);
+    }
+
+    /*
+     * The stream is read fully and left open, so the parser can be filled more than once.
+     */
+    public StreamingWordDocumentTemplateParser(InputStream source, Map<String, Object> variables, boolean checkEnvVar) throws IOException {
+        this(source.readAllBytes(), variables, checkEnvVar);
+    }
+
+    private StreamingWordDocumentTemplateParser(TemplateSource source, Map<String, Object> variables, boolean checkEnvVar) {
+        this.source = source;
+        this.variables = new HashMap<>(variables);
+        this.variables.put("$", "$");
+        this.checkEnvVar = checkEnvVar;
+    }
+
+    /*
+     * Add a source consulted for variables missing from the given variables, after the environment variables
+     * if those are enabled. Every lookup is done at most once per fill, so a value stays the same for the whole document.
+     */
+    public void addVariableSource(VariableSource source) {
+        variableSources.add(source);
+    }
+
+    /*
+     * When enabled, which is the default, parts that are not changed by the template variables, such as
+     * images, fonts and embeddings, are copied as their raw compressed bytes without being inflated and
+     * deflated again. Only the rewritten parts are compressed.
+     */
+    public void setRawCopy(boolean rawCopy) {
+        this.rawCopy = rawCopy;
+    }
+
+    /*
+     * See WordDocumentTemplateParser.setRenderListener. There is no LOAD phase, since the template is never
+     * loaded as a whole, and WRITE is the time spent copying the parts that hold no template variables.
+     */
+    public void setRenderListener(String templateName, RenderListener listener) {
+        this.templateName = templateName;
+        this.listener = listener;
+    }
+
+    /*
+     * See WordDocumentTemplateParser.setValidation. Without it, a missing ":?" variable is found while the
+     * output is being written, which the File variant then deletes, but the OutputStream variant leaves half written.
+     */
+    public void setValidation(boolean validation) {
+        this.validation = validation;
+    }
+
+    /*
+     * See WordDocumentTemplateParser.validate.
+     */
+    public List<Placeholder> validate() throws IOException {
+        VariableResolver resolver = VariableResolver.forRender(this.variables, checkEnvVar, variableSources);
+        return analysis().findMissingPlaceholders(resolver::lookup);
+    }
+
+    /*
+     * The output is written while the template is read, so it is deleted again if filling the template fails.
+     */
+    public void fill(File output) throws IOException {
+        boolean success = false;
+        try (OutputStream outputStream = new FileOutputStream(output)) {
+            fill(outputStream);
+            success = true;
+        } finally {
+            if (!success) {
+                output.delete();
+            }
+        }
+    }
+
+    /*
+     * The output stream is left open.
+     */
+    public void fill(OutputStream output) throws IOException {
+        long start = System.nanoTime();
+        RenderStats stats = new RenderStats();
+        boolean success = false;
+        try {
+            VariableResolver resolver = VariableResolver.forRender(this.variables, checkEnvVar, variableSources, stats);
+            if (validation) {
+                List<Placeholder> missing = analysis().findMissingPlaceholders(resolver::lookup);
+                if (!missing.isEmpty()) {
+                    throw VariableResolver.missingVariables(missing);
+                }
+            }
+            fill(output, resolver, stats);
+            success = true;
+        } finally {
+            stats.report(listener, templateName, System.nanoTime() - start, success);
+        }
+    }
+
+    private void fill(OutputStream output, VariableResolver resolver, RenderStats stats) throws IOException {
+        try (ZipFile zipFile = new ZipFile(source.open())) {
+            ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(new NonClosingOutputStream(output));
+            Map<String, RenderListener.Phase> templateParts = findTemplatePartPhases(zipFile);
+
+            StreamingPartRewriter rewriter = new StreamingPartRewriter();
+            for (String name : entryOrder(zipFile, templateParts.keySet())) {
+                ZipArchiveEntry entry = zipFile.getEntry(name);
+                if (entry == null) continue;
+
+                long partStart = System.nanoTime();
+                RenderListener.Phase phase = templateParts.get(name);
+                StreamingPartRewriter.PartSource partSource = () -> zipFile.getInputStream(entry);
+                StreamingPartRewriter.PartScan scan = phase != null ? rewriter.scan(partSource) : null;
+                if (scan != null && scan.mayContainTemplateVariables()) {
+                    zipOutputStream.putArchiveEntry(new ZipArchiveEntry(entry.getName()));
+                    rewriter.rewrite(partSource, scan, zipOutputStream, resolver);
+                    zipOutputStream.closeArchiveEntry();
+                } else {
+                    copyEntry(zipFile, entry, zipOutputStream, rawCopy);
+                }
+                stats.addTime(phase != null ? phase : RenderListener.Phase.WRITE, System.nanoTime() - partStart);
+            }
+            long finishStart = System.nanoTime();
+            zipOutputStream.finish();
+            zipOutputStream.flush();
+            stats.addTime(RenderListener.Phase.WRITE, System.nanoTime() - finishStart);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /*
+     * The output channel is left open.
+     */
+    public void fill(WritableByteChannel output) throws IOException {
+        fill(Channels.newOutputStream(output));
+    }
+
+    private TemplateAnalysis analysis() throws IOException {
+        TemplateAnalysis result = analysis;
+        if (result == null) {
+            analysis = result = TemplateAnalysis.analyze(source.open());
+        }
+        return result;
+    }
+
+    /*
+     * Content types first, then the template parts in the order the XWPF based parser handles them,
+     * and finally everything else in the original order.
+     */
+    static Set<String> entryOrder(ZipFile zipFile, Set<String> templateParts) {
+        Set<String> result = new LinkedHashSet<>();
+        result.add(CONTENT_TYPES);
+        result.addAll(templateParts);
+        for (ZipArchiveEntry entry : Collections.list(zipFile.getEntries())) {
+            result.add(entry.getName());
+        }
+        return result;
+    }
+
+    /*
+     * Copy an entry unchanged, as its raw compressed bytes if possible.
+     */
+    static void copyEntry(ZipFile zipFile, ZipArchiveEntry entry, ZipArchiveOutputStream zipOutputStream, boolean rawCopy) throws IOException {
+        if (rawCopy && zipFile.canReadEntryData(entry)) {
+            try (InputStream inputStream = zipFile.getRawInputStream(entry)) {
+                zipOutputStream.addRawArchiveEntry(entry, inputStream);
+            }
+        } else {
+            zipOutputStream.putArchiveEntry(new ZipArchiveEntry(entry.getName()));
+            try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                inputStream.transferTo(zipOutputStream);
+            }
+            zipOutputStream.closeArchiveEntry();
+        }
+    }
+
+    /*
+     * Zip entry names of the parts that may hold template variables, according to [Content_Types].xml.
+     */
+    static Set<String> findTemplateParts(ZipFile zipFile) throws IOException, XMLStreamException {
+        return findTemplatePartPhases(zipFile).keySet();
+    }
+
+    /*
+     * As above, with the phase each part is filled in.
+     */
+    static Map<String, RenderListener.Phase> findTemplatePartPhases(ZipFile zipFile) throws IOException, XMLStreamException {
+        List<List<String>> partsByType = new ArrayList<>();
+        for (int i = 0; i < TEMPLATE_PART_TYPES.size(); i++) {
+            partsByType.add(new ArrayList<>());
+        }
+
+        ZipArchiveEntry contentTypes = zipFile.getEntry(CONTENT_TYPES);
+        if (contentTypes == null) {
+            throw new IOException("Not a word document, " + CONTENT_TYPES + " is missing");
+        }
+        try (InputStream inputStream = zipFile.getInputStream(contentTypes)) {
+            XMLEventReader reader = INPUT_FACTORY.createXMLEventReader(inputStream);
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+                if (event.isStartElement() && event.asStartElement().getName().getLocalPart().equals("Override")) {
+                    StartElement override = event.asStartElement();
+                    String partName = override.getAttributeByName(new QName("PartName")).getValue();
+                    String contentType = override.getAttributeByName(new QName("ContentType")).getValue();
+                    int typeIndex = partTypeIndex(contentType);
+                    if (typeIndex >= 0) {
+                        partsByType.get(typeIndex).add(partName.startsWith("/") ? partName.substring(1) : partName);
+                    }
+                }
+            }
+            reader.close();
+        }
+
+        Map<String, RenderListener.Phase> result = new LinkedHashMap<>();
+        for (int i = 0; i < partsByType.size(); i++) {
+            for (String part : partsByType.get(i)) {
+                result.putIfAbsent(part, TEMPLATE_PART_PHASES.get(i));
+            }
+        }
+        return result;
+    }
+
+    private static int partTypeIndex(String contentType) {
+        String suffix;
+        if (contentType.startsWith(CONTENT_TYPE_PREFIX)) {
+            suffix = contentType.substring(CONTENT_TYPE_PREFIX.length());
+        } else if (contentType.startsWith(MACRO_CONTENT_TYPE_PREFIX)) {
+            suffix = contentType.substring(MACRO_CONTENT_TYPE_PREFIX.length());
+        } else {
+            return -1;
+        }
+        return TEMPLATE_PART_TYPES.indexOf(suffix);
+    }
+
+    @FunctionalInterface
+    private interface TemplateSource {
+        SeekableByteChannel open() throws IOException;
+    }
+}
@@ -0,0 +1,203 @@
+package document.word;
+
+import document.word.variable.VariableSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.stream.XMLStreamException;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+
+/*
+ * The placeholders of a template, found without rendering it.
+ *
+ * The main document, headers, footers, footnotes and endnotes are read once as a stream, the same way
+ * StreamingWordDocumentTemplateParser reads them, so the template is never loaded as a whole. An analysis is
+ * immutable, so it can be kept next to the template, see CompiledTemplate.getAnalysis, and used to check
+ * the variables of a request before it is rendered.
+ */
+public final class TemplateAnalysis {
+
+    private static final String MAIN_PART = "/word/document.xml";
+
+    private final List<Placeholder> placeholders;
+    private final List<MalformedPlaceholder> malformed;
+    private final Set<String> variableNames = new LinkedHashSet<>();
+    private final Set<String> requiredVariables = new LinkedHashSet<>();
+    private final Set<Placeholder> unassignedRequired = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private TemplateAnalysis(List<Placeholder> placeholders, List<MalformedPlaceholder> malformed) {
+        this.placeholders = Collections.unmodifiableList(placeholders);
+        this.malformed = Collections.unmodifiableList(malformed);
+
+        // a ":=" placeholder provides the variable when it is missing, so the ":?" placeholders
+        // filled after it never find the variable missing
+        Map<String, List<Integer>> assignments = new HashMap<>();
+        for (int i = 0; i < placeholders.size(); i++) {
+            Placeholder placeholder = placeholders.get(i);
+            if (placeholder.getModifier() != null && placeholder.getModifier().startsWith(":=")) {
+                assignments.computeIfAbsent(placeholder.getName(), name -> new ArrayList<>()).add(i);
+            }
+        }
+        for (int i = 0; i < placeholders.size(); i++) {
+            Placeholder placeholder = placeholders.get(i);
+            variableNames.add(placeholder.getName());
+            if (!placeholder.isRequired()) continue;
+            boolean assigned = false;
+            for (int assignment : assignments.getOrDefault(placeholder.getName(), List.of())) {
+                assigned |= assignsBefore(placeholders.get(assignment), assignment < i, placeholder);
+            }
+            if (!assigned) {
+                unassignedRequired.add(placeholder);
+                requiredVariables.add(placeholder.getName());
+            }
+        }
+    }
+
+    /*
+     * Whether both WordDocumentTemplateParser and StreamingWordDocumentTemplateParser fill the assignment
+     * before the required placeholder of the same name. Both fill the main document first, but the order of
+     * the other parts may differ. Within a body, WordDocumentTemplateParser fills all paragraphs before the
+     * tables, and the streaming one fills the tables with the assignments of the paragraphs applied, so a
+     * paragraph anywhere in the main document assigns a variable for its tables. Other parts may hold more
+     * than one body, e.g. one per footnote, which the locations do not tell apart, so there an assignment
+     * has to come first in document order, and not be in a table when the required placeholder is not.
+     */
+    private static boolean assignsBefore(Placeholder assignment, boolean earlier, Placeholder required) {
+        if (!assignment.getPartName().equals(required.getPartName())) {
+            return assignment.getPartName().equals(MAIN_PART);
+        }
+        if (assignment.getLocation() == null || required.getLocation() == null) return false;
+        if (assignment.getPartName().equals(MAIN_PART) && !isInTable(assignment) && isInTable(required)) return true;
+        return earlier && (!isInTable(assignment) || isInTable(required));
+    }
+
+    private static boolean isInTable(Placeholder placeholder) {
+        return placeholder.getLocation().startsWith("table ");
+    }
+
+    public static TemplateAnalysis analyze(File template) throws IOException {
+        return analyze(template.toPath());
+    }
+
+    public static TemplateAnalysis analyze(Path template) throws IOException {
+        return analyze(Files.newByteChannel(template, StandardOpenOption.READ));
+    }
+
+    public static TemplateAnalysis analyze(byte[] template) throws IOException {
+        return analyze(new SeekableInMemoryByteChannel(template));
+    }
+
+    /*
+     * The stream is read fully and left open.
+     */
+    public static TemplateAnalysis analyze(InputStream template) throws IOException {
+        return analyze(template.readAllBytes());
+    }
+
+    /*
+     * The analysis of a template whose placeholders are known already, e.g. saved with a CompiledTemplate.
+     */
+    static TemplateAnalysis of(List<Placeholder> placeholders, List<MalformedPlaceholder> malformed) {
+        return new TemplateAnalysis(new ArrayList<>(placeholders), new ArrayList<>(malformed));
+    }
+
+    static TemplateAnalysis analyze(SeekableByteChannel channel) throws IOException {
+        try (ZipFile zipFile = new ZipFile(channel)) {
+            List<Placeholder> placeholders = new ArrayList<>();
+            List<MalformedPlaceholder> malformed = new ArrayList<>();
+            StreamingPartRewriter rewriter = new StreamingPartRewriter();
+            for (String name : StreamingWordDocumentTemplateParser.findTemplateParts(zipFile)) {
+                ZipArchiveEntry entry = zipFile.getEntry(name);
+                if (entry == null) continue;
+                rewriter.collectPlaceholders(() -> zipFile.getInputStream(entry), "/" + name, placeholders, malformed);
+            }
+            return new TemplateAnalysis(placeholders, malformed);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /*
+     * Every placeholder occurrence in the template, in document order:
+     * the main body first, then headers, footers, footnotes and endnotes.
+     */
+    public List<Placeholder> getPlaceholders() {
+        return placeholders;
+    }
+
+    /*
+     * Every "${" that starts no placeholder, in document order, which the fill leaves in the output as it is,
+     * most likely a typo in the template.
+     */
+    public List<MalformedPlaceholder> getMalformed() {
+        return malformed;
+    }
+
+    /*
+     * The distinct variable names, in the order they first appear.
+     */
+    public Set<String> getVariableNames() {
+        return Collections.unmodifiableSet(variableNames);
+    }
+
+    /*
+     * The names of the ":?" variables that no ":=" placeholder assigns before they are filled,
+     * in the order they first appear.
+     */
+    public Set<String> getRequiredVariables() {
+        return Collections.unmodifiableSet(requiredVariables);
+    }
+
+    /*
+     * The required variables that have no value in the given variables.
+     */
+    public List<String> findMissing(Map<String, ?> variables) {
+        return findMissing(variables, null);
+    }
+
+    /*
+     * The required variables that have no value in the given variables, nor in the fallback, if any.
+     * Filling the template with the same variables and fallback fails when this is not empty.
+     */
+    public List<String> findMissing(Map<String, ?> variables, VariableSource fallback) {
+        List<String> result = new ArrayList<>();
+        for (Placeholder placeholder : findMissingPlaceholders(name -> {
+            Object value = variables.get(name);
+            return value != null || fallback == null ? value : fallback.lookup(name);
+        })) {
+            result.add(placeholder.getName());
+        }
+        return result;
+    }
+
+    /*
+     * The first ":?" placeholder of every required variable the lookup has no value for.
+     */
+    List<Placeholder> findMissingPlaceholders(VariableSource lookup) {
+        List<Placeholder> result = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (Placeholder placeholder : placeholders) {
+            String name = placeholder.getName();
+            if (unassignedRequired.contains(placeholder) && seen.add(name) && lookup.lookup(name) == null) {
+                result.add(placeholder);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,74 @@
+package document.word;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * A bounded cache of compiled templates, keyed by the canonical template path.
+ *
+ * An entry is only reused while the file keeps the same modification time and size,
+ * otherwise the template is compiled again, unless an up to date artifact was saved next to it,
+ * see CompiledTemplate.compileOrOpen. The least recently used entry is evicted once the cache is full.
+ */
+public class TemplateCache {
+
+    private final Map<String, Entry> entries;
+
+    public TemplateCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxSize);
+        }
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public CompiledTemplate get(File source) throws IOException {
+        String path = source.getCanonicalPath();
+        long lastModified = source.lastModified();
+        long length = source.length();
+
+        synchronized (entries) {
+            Entry entry = entries.get(path);
+            if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+                return entry.template;
+            }
+        }
+
+        // compile outside the lock so that a slow template does not block lookups of other templates
+        CompiledTemplate template = CompiledTemplate.compileOrOpen(source);
+        synchronized (entries) {
+            entries.put(path, new Entry(template, lastModified, length));
+        }
+        return template;
+    }
+
+    public void invalidate(File source) throws IOException {
+        synchronized (entries) {
+            entries.remove(source.getCanonicalPath());
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static class Entry {
+        CompiledTemplate template;
+        long lastModified, length;
+        Entry(CompiledTemplate template, long lastModified, long length) {
+            this.template = template;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package document.word;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+
+/*
+ * Keeps a few copies of a compiled template made ahead of time, so that a fill starts right away with
+ * a ready document instead of loading the package and copying its xml first.
+ *
+ * A filled document cannot be reused, so every copy taken is replaced by a new one, made on the executor,
+ * the common fork/join pool by default, off the thread of the fill. When no copy is ready, e.g. in a burst
+ * of fills, the fill makes its own copy as usual. A copy that could not be made ahead of time is only
+ * counted, see getPrefetchFailures, since the fill that finds no copy ready makes its own, and fails with
+ * its own exception if the template cannot be copied at all.
+ *
+ * new WordDocumentTemplateParser(pool, variables, true).fill(output);
+ */
+public final class TemplatePool implements Closeable {
+
+    private final CompiledTemplate template;
+    private final int size;
+    private final Executor executor;
+    private final BlockingQueue<XWPFDocument> ready = new LinkedBlockingQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder prefetchFailures = new LongAdder();
+    private final AtomicReference<Exception> lastPrefetchFailure = new AtomicReference<>();
+    private volatile boolean closed;
+
+    public TemplatePool(CompiledTemplate template, int size) {
+        this(template, size, ForkJoinPool.commonPool());
+    }
+
+    public TemplatePool(CompiledTemplate template, int size, Executor executor) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive: " + size);
+        }
+        this.template = template;
+        this.size = size;
+        this.executor = executor;
+        refill();
+    }
+
+    public CompiledTemplate getTemplate() {
+        return template;
+    }
+
+    /*
+     * The number of fills that started with a ready document.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /*
+     * The number of fills that had to copy their own document.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /*
+     * The number of copies that could not be made ahead of time.
+     */
+    public long getPrefetchFailures() {
+        return prefetchFailures.sum();
+    }
+
+    /*
+     * Why the last copy that could not be made ahead of time failed, or null if none has.
+     */
+    public Exception getLastPrefetchFailure() {
+        return lastPrefetchFailure.get();
+    }
+
+    /*
+     * The ready documents are discarded and no more are copied.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        discard();
+    }
+
+    /*
+     * A fresh copy of the template, owned by the caller.
+     */
+    XWPFDocument take() throws IOException {
+        XWPFDocument doc = ready.poll();
+        refill();
+        if (doc != null) {
+            hits.increment();
+            return doc;
+        }
+        misses.increment();
+        return template.newDocument();
+    }
+
+    /*
+     * Copy as many documents as are missing, counting those being copied already.
+     */
+    private void refill() {
+        // bounded, so that a copy failing on a caller thread executor is not retried over and over
+        for (int i = 0; i < size && !closed; i++) {
+            int current = pending.get();
+            if (ready.size() + current >= size) return;
+            if (pending.compareAndSet(current, current + 1)) {
+                executor.execute(this::prefetch);
+            }
+        }
+    }
+
+    private void prefetch() {
+        try {
+            if (closed) return;
+            ready.add(template.newDocument());
+            // the pool may have been closed while copying
+            if (closed) discard();
+        } catch (IOException | RuntimeException e) {
+            // counted rather than left to a thread of the executor; a fill finding no copy ready makes its own
+            prefetchFailures.increment();
+            lastPrefetchFailure.set(e);
+        } finally {
+            pending.decrementAndGet();
+        }
+    }
+
+    private void discard() {
+        XWPFDocument doc;
+        while ((doc = ready.poll()) != null) {
+            try {
+                doc.close();
+            } catch (IOException e) {
+                // an in-memory document, nothing to release
+            }
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package document.word;
+
+import document.word.exception.MissingTemplateVariableException;
+import document.word.util.JsonUtil;
+import document.word.variable.CompositeVariableSource;
+import document.word.variable.EnvironmentVariableSource;
+import document.word.variable.LazyList;
+import document.word.variable.VariableSource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Resolves template variable matches against a single variable scope.
+ *
+ * The scope is written to when a variable is assigned by ":=" or read from the fallback source,
+ * so a resolver must not be shared between concurrent renders.
+ */
+final class VariableResolver {
+
+    private final Map<String, Object> variables;
+    private final VariableSource fallback;
+    private final RenderStats stats;
+
+    /*
+     * The fallback source, if any, is consulted for variables missing from the scope.
+     */
+    VariableResolver(Map<String, Object> variables, VariableSource fallback) {
+        this(variables, fallback, new RenderStats());
+    }
+
+    private VariableResolver(Map<String, Object> variables, VariableSource fallback, RenderStats stats) {
+        this.variables = variables;
+        this.fallback = fallback;
+        this.stats = stats;
+    }
+
+    /*
+     * A resolver for one render: the fallback chain is the environment, if enabled, followed by the given sources.
+     * Lookups in the chain are cached for the whole render.
+     */
+    static VariableResolver forRender(Map<String, Object> variables, boolean checkEnvVar, List<VariableSource> sources) {
+        return forRender(variables, checkEnvVar, sources, new RenderStats());
+    }
+
+    /*
+     * As above, counting into the given stats, which are shared by all resolvers derived from this one.
+     */
+    static VariableResolver forRender(Map<String, Object> variables, boolean checkEnvVar, List<VariableSource> sources, RenderStats stats) {
+        List<VariableSource> chain = new ArrayList<>();
+        if (checkEnvVar) {
+            chain.add(EnvironmentVariableSource.getInstance());
+        }
+        chain.addAll(sources);
+        return new VariableResolver(new HashMap<>(variables), chain.isEmpty() ? null : new CompositeVariableSource(chain), stats);
+    }
+
+    VariableResolver copy() {
+        return new VariableResolver(new HashMap<>(variables), fallback, stats);
+    }
+
+    /*
+     * Take over the variables a copy of this scope has assigned or looked up since, e.g. by the ":=" placeholders
+     * of table rows, without overriding the variables of this scope.
+     */
+    void merge(VariableResolver copy) {
+        copy.variables.forEach(variables::putIfAbsent);
+    }
+
+    /*
+     * A copy counting into its own stats, for a part of the render filled on another thread.
+     * The fallback is shared, which is safe since CompositeVariableSource is.
+     */
+    VariableResolver copy(RenderStats stats) {
+        return new VariableResolver(new HashMap<>(variables), fallback, stats);
+    }
+
+    RenderStats stats() {
+        return stats;
+    }
+
+    Object resolve(PlaceholderToken token) {
+        Object value = resolveLazily(token);
+        if (value instanceof LazyList lazyList) {
+            // read once for the whole render
+            value = readAll(lazyList);
+            variables.put(token.name(), value);
+        }
+        return value;
+    }
+
+    /*
+     * Same as resolve, but a LazyList value is returned as is.
+     */
+    private Object resolveLazily(PlaceholderToken token) {
+        stats.count(RenderListener.Counter.PLACEHOLDERS_RESOLVED, 1);
+        String name = token.name();
+        Object value = lookup(name);
+        if (value != null) return value;
+
+        String defaultValue = token.modifier();
+        if (defaultValue != null) {
+            if (defaultValue.startsWith(":?")) {
+                throw missingVariables(List.of(new Placeholder(name, defaultValue, null)));
+            }
+            stats.count(RenderListener.Counter.DEFAULTS_USED, 1);
+            value = JsonUtil.parseCachedJsonValue(defaultValue.substring(":-".length()));
+            if (defaultValue.startsWith(":=")) {
+                variables.put(name, value);
+            }
+            return value;
+        }
+
+        return token.text();
+    }
+
+    /*
+     * The value of the variable in the scope, or else in the fallback source, or null if there is none.
+     */
+    Object lookup(String name) {
+        Object value = variables.get(name);
+        if (value != null || fallback == null) return value;
+
+        value = fallback.lookup(name);
+        if (value != null) {
+            stats.count(RenderListener.Counter.FALLBACKS_USED, 1);
+            variables.put(name, value);
+        }
+        return value;
+    }
+
+    private static List<Object> readAll(LazyList lazyList) {
+        try {
+            return lazyList.toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+     * The exception for the ":?" placeholders of missing variables, whose message is either
+     * "Missing template variable: name (custom message)" or, for more than one,
+     * "Missing template variables: name (custom message), other name".
+     */
+    static MissingTemplateVariableException missingVariables(List<Placeholder> missing) {
+        StringBuilder message = new StringBuilder(missing.size() == 1 ? "Missing template variable: " : "Missing template variables: ");
+        List<String> names = new ArrayList<>();
+        for (Placeholder placeholder : missing) {
+            if (!names.isEmpty()) {
+                message.append(", ");
+            }
+            names.add(placeholder.getName());
+            message.append(placeholder.getName());
+            String customMessage = placeholder.getModifier().substring(":?".length());
+            if (customMessage.length() > 0) {
+                message.append(" (").append(customMessage).append(")");
+            }
+        }
+        return new MissingTemplateVariableException(message.toString(), names);
+    }
+
+    /*
+     * Index the placeholders of a table row: each distinct name and modifier is resolved once, in the order
+     * they first appear, and the result is shared by all rows the table row expands into. The LazyList values
+     * of "[]" variables are not read yet.
+     */
+    RowGroup rowGroup(Collection<PlaceholderToken> matches) {
+        Set<String> seen = new HashSet<>();
+        Map<String, Object> values = new LinkedHashMap<>();
+        int rowCount = 1;
+        boolean lazy = false;
+        for (PlaceholderToken match : matches) {
+            if (!seen.add(match.text())) continue;
+
+            String name = match.name();
+            boolean isRepeatRowVariable = name.endsWith("[]");
+            Object value = isRepeatRowVariable ? resolveLazily(match) : resolve(match);
+            values.put(name, value);
+            lazy |= value instanceof LazyList;
+            if (isRepeatRowVariable && value instanceof List<?> list && list.size() > rowCount) {
+                rowCount = list.size();
+            }
+        }
+        return new RowGroup(values, rowCount, lazy, fallback, stats);
+    }
+
+    /*
+     * The resolved variables of one table row and the rows it expands into.
+     */
+    static final class RowGroup {
+
+        private final Map<String, Object> values;
+        private int rowCount;
+        private boolean lazy;
+        private final VariableSource fallback;
+        private final RenderStats stats;
+
+        private RowGroup(Map<String, Object> values, int rowCount, boolean lazy, VariableSource fallback, RenderStats stats) {
+            this.values = values;
+            this.rowCount = rowCount;
+            this.lazy = lazy;
+            this.fallback = fallback;
+            this.stats = stats;
+        }
+
+        /*
+         * The number of rows the table row expands into, i.e. the size of the longest list mapped to a "[]" variable.
+         * LazyList values are read into lists for that, unless the rows are iterated with rows() instead.
+         */
+        int rowCount() {
+            if (lazy) {
+                for (Map.Entry<String, Object> entry : values.entrySet()) {
+                    if (entry.getValue() instanceof LazyList lazyList) {
+                        List<Object> list = readAll(lazyList);
+                        entry.setValue(list);
+                        rowCount = Math.max(rowCount, list.size());
+                    }
+                }
+                lazy = false;
+            }
+            return rowCount;
+        }
+
+        /*
+         * The stats of the resolver the row group was made by.
+         */
+        RenderStats stats() {
+            return stats;
+        }
+
+        /*
+         * Whether a "[]" variable has a LazyList value that has not been read yet.
+         */
+        boolean isLazy() {
+            return lazy;
+        }
+
+        /*
+         * The scope of one generated table row: "[]" variables are mapped to their element at the row index,
+         * other variables are only kept in the first row.
+         */
+        VariableResolver forRow(int rowIndex) {
+            rowCount();
+            return new VariableResolver(rowValues(rowIndex, Map.of()), fallback, stats);
+        }
+
+        /*
+         * Iterate over the rows while reading the LazyList values, one element per row, so that none of them
+         * is held in memory. There are as many rows as the longest list or LazyList has elements, and at least one.
+         */
+        Rows rows() throws IOException {
+            return new Rows();
+        }
+
+        private Map<String, Object> rowValues(int rowIndex, Map<String, LazyList.Cursor> cursors) {
+            Map<String, Object> result = new HashMap<>(values.size() * 2);
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                String name = entry.getKey();
+                Object value = entry.getValue();
+                boolean isRepeatRowVariable = name.endsWith("[]");
+                if (isRepeatRowVariable && value instanceof List<?> list) {
+                    result.put(name, rowIndex < list.size() ? list.get(rowIndex) : "");
+                } else if (value instanceof LazyList) {
+                    try {
+                        LazyList.Cursor cursor = cursors.get(name);
+                        result.put(name, cursor.hasNext() ? cursor.next() : "");
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                } else {
+                    result.put(name, rowIndex == 0 ? value : "");
+                }
+            }
+            return result;
+        }
+
+        final class Rows implements Closeable {
+
+            private final Map<String, LazyList.Cursor> cursors = new HashMap<>();
+            private int rowIndex = -1;
+            private VariableResolver current;
+
+            private Rows() throws IOException {
+                try {
+                    for (Map.Entry<String, Object> entry : values.entrySet()) {
+                        if (entry.getValue() instanceof LazyList lazyList) {
+                            cursors.put(entry.getKey(), lazyList.open());
+                        }
+                    }
+                } catch (IOException e) {
+                    close();
+                    throw e;
+                }
+            }
+
+            /*
+             * Move to the next row, returns false once there are no more rows.
+             */
+            boolean next() throws IOException {
+                rowIndex++;
+                if (rowIndex > 0 && rowIndex >= rowCount && !anyHasNext()) {
+                    return false;
+                }
+                try {
+                    current = new VariableResolver(rowValues(rowIndex, cursors), fallback, stats);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                return true;
+            }
+
+            /*
+             * The scope of the current row, see forRow.
+             */
+            VariableResolver resolver() {
+                return current;
+            }
+
+            @Override
+            public void close() throws IOException {
+                IOException failure = null;
+                for (LazyList.Cursor cursor : cursors.values()) {
+                    try {
+                        cursor.close();
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+
+            private boolean anyHasNext() throws IOException {
+                for (LazyList.Cursor cursor : cursors.values()) {
+                    if (cursor.hasNext()) return true;
+                }
+                return false;
+            }
+        }
+    }
+}
@@ -1,25 +1,42 @@
 package document.word;
 
-import document.word.exception.MissingTemplateVariableException;
 import document.word.util.ParagraphUtil;
 import document.word.util.RunUtil;
 import document.word.util.TableUtil;
+import document.word.variable.LazyList;
+import document.word.variable.VariableSource;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.MatchResult;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import org.apache.poi.xwpf.usermodel.IBody;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
 import org.apache.poi.xwpf.usermodel.XWPFEndnote;
@@ -34,236 +51,569 @@ import org.apache.poi.xwpf.usermodel.XWPFTableRow;
 
 public class WordDocumentTemplateParser {
 
-    /*
-     * Pattern breakdown:
-     *
-     *     \$\{ ------------------- start with a dollar sign and an open curly bracket
-     *
-     *     ( ---------------------- start of group 1
-     *
-     *     [a-zA-Z0-9.$_-]+? ------ non-greedy match for a non empty string that consists of alphanumerics, dots, dollar signs, underscores or hyphens
-     *
-     *     (?:\[\])? -------------- an optional non-capturing group that matches an open square bracket and a close square bracket
-     *
-     *     ) ---------------------- end of group 1
-     *
-     *     ( ---------------------- start of group 2
-     *
-     *     :[-=?] ----------------- matches a colon, followed by a hyphen, an equal sign, or a question mark
-     *
-     *     .*? -------------------- non-greedy match for a nullable string
-     *
-     *     )? --------------------- end of optional group 2
-     *
-     *     \} --------------------- end with a close curly bracket
-     *
-     * Pattern examples:
-     *     - ${var_name}
-     *     - ${var_name:-default value}
-     *     - ${var_name:=assign if missing}
-     *     - ${var_name:?error if missing}
-     *     - ${table_row_array[]}
-     *     - ${table_row_array[]:-["default value 1","default value 2"]}
-     */
-    private static final Pattern PATTERN = Pattern.compile("\\$\\{([a-zA-Z0-9.$_-]+?(?:\\[\\])?)(:[-=?].*?)?\\}");
-    private static final Pattern PATTERN_FORCE_MATCH = Pattern.compile("^|" + PATTERN.pattern());
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final Set<Class<?>> PLAIN_TYPES = Set.of(String.class, Boolean.class, Character.class, Byte.class, Short.class,
+            Integer.class, Long.class, Float.class, Double.class, BigInteger.class, BigDecimal.class);
 
-    private final File source;
+    private final DocumentSource source;
+    private final SnapshotSource snapshotSource;
+    private final boolean normalised;
     private final Map<String, Object> variables;
     private final boolean checkEnvVar;
+    private final List<VariableSource> variableSources = new CopyOnWriteArrayList<>();
+    private String templateName = "template";
+    private RenderListener listener = RenderListener.NONE;
+    private boolean validation;
+    private boolean parallelParts;
+    private RenderCache renderCache;
 
     public WordDocumentTemplateParser(File source, Map<String, Object> variables, boolean checkEnvVar) {
+        this(source.toPath(), variables, checkEnvVar);
+    }
+
+    public WordDocumentTemplateParser(Path source, Map<String, Object> variables, boolean checkEnvVar) {
+        this(() -> {
+            try (InputStream inputStream = Files.newInputStream(source)) {
+                return new XWPFDocument(inputStream);
+            }
+        }, new FileSnapshot(source.toFile()), false, variables, checkEnvVar);
+    }
+
+    public WordDocumentTemplateParser(byte[] source, Map<String, Object> variables, boolean checkEnvVar) {
+        this(() -> new XWPFDocument(new ByteArrayInputStream(source)), new ByteSnapshot(source), false, variables, checkEnvVar);
+    }
+
+    /*
+     * The stream is read fully and left open, so the parser can be filled more than once.
+     */
+    public WordDocumentTemplateParser(InputStream source, Map<String, Object> variables, boolean checkEnvVar) throws IOException {
+        this(source.readAllBytes(), variables, checkEnvVar);
+    }
+
+    /*
+     * A compiled template has its split placeholders merged already, so filling it skips
+     * both the zip read from disk and the run merging.
+     */
+    public WordDocumentTemplateParser(CompiledTemplate template, Map<String, Object> variables, boolean checkEnvVar) {
+        this(template::newDocument, () -> new Snapshot(template.getAnalysis(), template.getSourceDigest()), true, variables, checkEnvVar);
+    }
+
+    /*
+     * Fill a ready copy of the pooled template, see TemplatePool.
+     */
+    public WordDocumentTemplateParser(TemplatePool pool, Map<String, Object> variables, boolean checkEnvVar) {
+        this(pool::take, () -> new Snapshot(pool.getTemplate().getAnalysis(), pool.getTemplate().getSourceDigest()), true, variables, checkEnvVar);
+    }
+
+    private WordDocumentTemplateParser(DocumentSource source, SnapshotSource snapshotSource, boolean normalised,
+            Map<String, Object> variables, boolean checkEnvVar) {
         this.source = source;
+        this.snapshotSource = snapshotSource;
+        this.normalised = normalised;
         this.variables = new HashMap<>(variables);
         this.variables.put("$", "$");
         this.checkEnvVar = checkEnvVar;
     }
 
+    /*
+     * Add a source consulted for variables missing from the given variables, after the environment variables
+     * if those are enabled. Every lookup is done at most once per fill, so a value stays the same for the whole document.
+     */
+    public void addVariableSource(VariableSource source) {
+        variableSources.add(source);
+    }
+
+    /*
+     * Report the timings and counters of every fill to the listener, under the given template name.
+     */
+    public void setRenderListener(String templateName, RenderListener listener) {
+        this.templateName = templateName;
+        this.listener = listener;
+    }
+
+    /*
+     * When enabled, every fill first checks that all ":?" variables have a value, before the template is even
+     * loaded, and fails with a MissingTemplateVariableException naming all of the missing ones, instead of only
+     * the first one the fill comes across. The check costs a scan of the template the first time, unless the
+     * parser was given a CompiledTemplate, which has done that scan already.
+     *
+     * A ":=" placeholder counts as a value only where it is sure to be filled before the ":?" one, whichever
+     * parser fills the template: anywhere in the main document for the headers, footers and notes, and, within
+     * the main document, a paragraph for the tables. Elsewhere it has to come first in its part, outside a table
+     * unless the ":?" placeholder is in one too. A template relying on any other order is rejected, even if the
+     * fill itself would have found the variable assigned.
+     */
+    public void setValidation(boolean validation) {
+        this.validation = validation;
+    }
+
+    /*
+     * When enabled, once the main body has been filled, the headers, footers, footnotes and endnotes are filled
+     * concurrently on the common fork/join pool, each header and footer on its own and all footnotes, like all
+     * endnotes, together, as they share a package part. This shortens a single fill of templates with many
+     * sections or notes, rather than adding throughput. Every part starts from the variables as they are after
+     * the body, so when any of these parts assigns a variable with ":=", which a later part could depend on,
+     * they are filled one after another as usual. Variable sources added to the parser must then be thread safe.
+     */
+    public void setParallelParts(boolean parallelParts) {
+        this.parallelParts = parallelParts;
+    }
+
+    /*
+     * Look every fill up in the cache first, and keep the filled document in it otherwise. The key is made of
+     * the content of the template and the value of every one of its variables, looked up the same way as the
+     * fill does, so including environment variables and other sources, and the elements of a LazyList, which
+     * makes a cached document the same as the one the fill would have produced. Fills with a value other than
+     * strings, numbers, booleans, and lists and maps of those, e.g. any other object with its own toString,
+     * are not cached.
+     */
+    public void setRenderCache(RenderCache renderCache) {
+        this.renderCache = renderCache;
+    }
+
+    /*
+     * The first ":?" placeholder of every required variable without a value, in document order,
+     * looked up the same way a fill would. The template is not filled.
+     */
+    public List<Placeholder> validate() throws IOException {
+        VariableResolver resolver = VariableResolver.forRender(this.variables, checkEnvVar, variableSources);
+        return snapshotSource.get().analysis.findMissingPlaceholders(resolver::lookup);
+    }
+
+    /*
+     * The output file is only created once the template has been filled successfully.
+     */
     public void fill(File output) throws IOException {
-        try (XWPFDocument doc = new XWPFDocument(new FileInputStream(source))) {
+        fill(() -> new FileOutputStream(output), true);
+    }
+
+    /*
+     * The output stream is left open.
+     */
+    public void fill(OutputStream output) throws IOException {
+        fill(() -> output, false);
+    }
 
-            handleParagraphsAndTables(doc, this.variables);
+    /*
+     * The output channel is left open.
+     */
+    public void fill(WritableByteChannel output) throws IOException {
+        // a render cache hit is transferred to the channel itself, without copying it through the heap if it is on disk
+        fill(() -> Channels.newOutputStream(output), false, output);
+    }
 
-            for (XWPFHeader header : doc.getHeaderList()) {
-                handleParagraphsAndTables(header, this.variables);
+    private void fill(OutputSupplier output, boolean closeOutput) throws IOException {
+        fill(output, closeOutput, null);
+    }
+
+    /*
+     * The channel, if any, is the one the output stream writes to.
+     */
+    private void fill(OutputSupplier output, boolean closeOutput, WritableByteChannel channel) throws IOException {
+        RenderStats stats = new RenderStats();
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            // variables assigned while rendering, e.g. by ":=", are scoped to this fill
+            // so that the same parser can be used by multiple threads
+            VariableResolver resolver = VariableResolver.forRender(this.variables, checkEnvVar, variableSources, stats);
+            String key = renderCache == null ? null : cacheKey(resolver);
+            if (key != null) {
+                try (RenderCache.Hit hit = renderCache.get(key)) {
+                    if (hit != null) {
+                        long writeStart = System.nanoTime();
+                        if (channel != null) {
+                            hit.transferTo(channel);
+                        } else {
+                            write(output, closeOutput, hit::transferTo);
+                        }
+                        stats.addTime(RenderListener.Phase.WRITE, System.nanoTime() - writeStart);
+                        success = true;
+                        return;
+                    }
+                }
             }
-            for (XWPFFooter footer : doc.getFooterList()) {
-                handleParagraphsAndTables(footer, this.variables);
+
+            try (XWPFDocument doc = render(resolver)) {
+                long writeStart = System.nanoTime();
+                if (key == null) {
+                    write(output, closeOutput, doc::write);
+                } else {
+                    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                    doc.write(buffer);
+                    byte[] document = buffer.toByteArray();
+                    renderCache.put(key, document);
+                    write(output, closeOutput, outputStream -> outputStream.write(document));
+                }
+                stats.addTime(RenderListener.Phase.WRITE, System.nanoTime() - writeStart);
+                success = true;
             }
-            for (XWPFFootnote footnote : doc.getFootnotes()) {
-                handleParagraphsAndTables(footnote, this.variables);
+        } finally {
+            stats.report(listener, templateName, System.nanoTime() - start, success);
+        }
+    }
+
+    private static void write(OutputSupplier output, boolean closeOutput, OutputWriter writer) throws IOException {
+        OutputStream outputStream = output.open();
+        try {
+            writer.write(outputStream);
+        } finally {
+            if (closeOutput) outputStream.close();
+        }
+    }
+
+    /*
+     * The render cache key of a fill: a digest of the template, of the version of this library, which may fill
+     * the same template differently, and of the variables of the template, sorted by name, as json, each with
+     * its value as rendered, i.e. String.valueOf of the value, or of every element of a list. The elements of
+     * a LazyList are streamed into the digest, so such a list is read once more, but not held in memory any
+     * longer than the fill does anyway. Null when a value is not plain data, see isPlain, since the text of any
+     * other object may not tell its content apart.
+     */
+    private String cacheKey(VariableResolver resolver) throws IOException {
+        // the variables and the digest of the same version of the template, which may be edited in between
+        Snapshot snapshot = snapshotSource.get();
+        Map<String, Object> values = new TreeMap<>();
+        for (String name : snapshot.analysis.getVariableNames()) {
+            values.put(name, resolver.lookup(name));
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(snapshot.digest);
+        digest.update(String.valueOf(WordDocumentTemplateParser.class.getPackage().getImplementationVersion()).getBytes(StandardCharsets.UTF_8));
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+            generator.writeStartObject();
+            for (Map.Entry<String, Object> entry : values.entrySet()) {
+                generator.writeFieldName(entry.getKey());
+                Object value = entry.getValue();
+                if (value instanceof LazyList lazyList) {
+                    generator.writeStartArray();
+                    try (LazyList.Cursor cursor = lazyList.open()) {
+                        while (cursor.hasNext()) {
+                            if (!writeRendered(generator, cursor.next())) return null;
+                        }
+                    }
+                    generator.writeEndArray();
+                } else if (value instanceof List<?> list) {
+                    generator.writeStartArray();
+                    for (Object element : list) {
+                        if (!writeRendered(generator, element)) return null;
+                    }
+                    generator.writeEndArray();
+                } else if (value == null) {
+                    generator.writeNull();
+                } else if (!writeRendered(generator, value)) {
+                    return null;
+                }
             }
-            for (XWPFEndnote endnote : doc.getEndnotes()) {
-                handleParagraphsAndTables(endnote, this.variables);
+            generator.writeEndObject();
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static boolean writeRendered(JsonGenerator generator, Object value) throws IOException {
+        if (!isPlain(value)) return false;
+        generator.writeString(String.valueOf(value));
+        return true;
+    }
+
+    /*
+     * Whether the value is json like data, e.g. read by Jackson, whose text only depends on its content:
+     * a string, a boolean, a number or character of the JDK, or a list or map of those.
+     */
+    private static boolean isPlain(Object value) {
+        if (value == null || PLAIN_TYPES.contains(value.getClass())) return true;
+        if (value instanceof List<?> list) {
+            return list.stream().allMatch(WordDocumentTemplateParser::isPlain);
+        }
+        if (value instanceof Map<?, ?> map) {
+            return map.entrySet().stream().allMatch(entry -> isPlain(entry.getKey()) && isPlain(entry.getValue()));
+        }
+        return false;
+    }
+
+    private XWPFDocument render(VariableResolver resolver) throws IOException {
+        RenderStats stats = resolver.stats();
+        if (validation) {
+            List<Placeholder> missing = snapshotSource.get().analysis.findMissingPlaceholders(resolver::lookup);
+            if (!missing.isEmpty()) {
+                throw VariableResolver.missingVariables(missing);
             }
+        }
+
+        long start = System.nanoTime();
+        XWPFDocument doc = source.open();
+        stats.addTime(RenderListener.Phase.LOAD, System.nanoTime() - start);
+        try {
+            handleBody(doc, RenderListener.Phase.BODY, resolver);
+            handleParts(doc, resolver);
+            return doc;
+        } catch (RuntimeException e) {
+            doc.close();
+            throw e;
+        }
+    }
+
+    /*
+     * Fill the headers, footers, footnotes and endnotes, concurrently if enabled, see setParallelParts.
+     */
+    private void handleParts(XWPFDocument doc, VariableResolver resolver) {
+        List<Part> parts = new ArrayList<>();
+        for (XWPFHeader header : doc.getHeaderList()) {
+            parts.add(new Part(List.of(header), RenderListener.Phase.HEADERS));
+        }
+        for (XWPFFooter footer : doc.getFooterList()) {
+            parts.add(new Part(List.of(footer), RenderListener.Phase.FOOTERS));
+        }
+        if (!doc.getFootnotes().isEmpty()) {
+            parts.add(new Part(new ArrayList<>(doc.getFootnotes()), RenderListener.Phase.FOOTNOTES));
+        }
+        if (!doc.getEndnotes().isEmpty()) {
+            parts.add(new Part(new ArrayList<>(doc.getEndnotes()), RenderListener.Phase.ENDNOTES));
+        }
 
-            try (FileOutputStream outputStream = new FileOutputStream(output)) {
-                doc.write(outputStream);
+        if (!parallelParts || parts.size() < 2 || parts.stream().anyMatch(Part::assigns)) {
+            for (Part part : parts) {
+                part.handle(resolver);
             }
+            return;
+        }
+
+        List<VariableResolver> resolvers = new ArrayList<>();
+        List<ForkJoinTask<RuntimeException>> tasks = new ArrayList<>();
+        for (Part part : parts) {
+            VariableResolver partResolver = resolver.copy(new RenderStats());
+            resolvers.add(partResolver);
+            tasks.add(ForkJoinPool.commonPool().submit(() -> {
+                // returned rather than thrown, since join may rethrow a copy, e.g. without the missing variables
+                try {
+                    part.handle(partResolver);
+                    return null;
+                } catch (RuntimeException e) {
+                    return e;
+                }
+            }));
+        }
+        RuntimeException failure = null;
+        for (int i = 0; i < tasks.size(); i++) {
+            RuntimeException e = tasks.get(i).join();
+            resolver.stats().add(resolvers.get(i).stats());
+            // the same failure as when filled one after another: the one of the first failing part
+            if (failure == null) failure = e;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /*
+     * Bodies are visited in the same order as forEachBody.
+     */
+    private void handleBody(IBody body, RenderListener.Phase phase, VariableResolver resolver) {
+        long start = System.nanoTime();
+        handleParagraphsAndTables(body, resolver, PlaceholderScanner::scan);
+        resolver.stats().addTime(phase, System.nanoTime() - start);
+    }
+
+    /*
+     * The bodies of one package part: a header, a footer, or all footnotes or endnotes.
+     */
+    private final class Part {
+
+        private final List<IBody> bodies;
+        private final RenderListener.Phase phase;
+
+        Part(List<? extends IBody> bodies, RenderListener.Phase phase) {
+            this.bodies = List.copyOf(bodies);
+            this.phase = phase;
+        }
+
+        void handle(VariableResolver resolver) {
+            for (IBody body : bodies) {
+                handleBody(body, phase, resolver);
+            }
+        }
+
+        /*
+         * Whether the part may assign a variable with ":=", erring on the side of yes.
+         */
+        boolean assigns() {
+            for (IBody body : bodies) {
+                if (assigns(body)) return true;
+            }
+            return false;
+        }
+
+        private boolean assigns(IBody body) {
+            for (XWPFParagraph paragraph : body.getParagraphs()) {
+                if (paragraph.getText().contains(":=")) return true;
+            }
+            for (XWPFTable table : body.getTables()) {
+                for (XWPFTableRow row : table.getRows()) {
+                    for (XWPFTableCell cell : row.getTableCells()) {
+                        if (assigns(cell)) return true;
+                    }
+                }
+            }
+            return false;
         }
     }
 
-    private void handleParagraphsAndTables(IBody body, Map<String, Object> variables) {
+    /*
+     * Visit the main body, then every header, footer, footnote and endnote, in that order.
+     */
+    static void forEachBody(XWPFDocument doc, Consumer<IBody> action) {
+        action.accept(doc);
+        for (XWPFHeader header : doc.getHeaderList()) {
+            action.accept(header);
+        }
+        for (XWPFFooter footer : doc.getFooterList()) {
+            action.accept(footer);
+        }
+        for (XWPFFootnote footnote : doc.getFootnotes()) {
+            action.accept(footnote);
+        }
+        for (XWPFEndnote endnote : doc.getEndnotes()) {
+            action.accept(endnote);
+        }
+    }
+
+    /*
+     * The scanner is PlaceholderScanner::scan, or a caching scan within an expanded table row,
+     * whose copies all start out with the same text.
+     */
+    private void handleParagraphsAndTables(IBody body, VariableResolver resolver, Function<String, List<PlaceholderToken>> scanner) {
         for (XWPFParagraph paragraph : new ArrayList<>(body.getParagraphs())) {
-            replaceTemplateVariableInText(body, paragraph, variables);
+            replaceTemplateVariableInText(body, paragraph, resolver, scanner);
         }
         for (XWPFTable table : body.getTables()) {
-            int currentRowIndex = 0;
             for (XWPFTableRow row : new ArrayList<>(table.getRows())) {
-                int rowsToRepeat = 1;
-                Set<MatchResult> matches = retrieveAllTemplateVariableMatchesForTableRow(new HashSet<>(), row);
-                for (MatchResult match : matches) {
-                    boolean isRepeatRowVariable = match.group(1).endsWith("[]");
-                    if (isRepeatRowVariable && resolveVariable(match, variables) instanceof List<?> list && list.size() > rowsToRepeat) {
-                        rowsToRepeat = list.size();
-                    }
+                VariableResolver.RowGroup rowGroup = resolver.rowGroup(retrieveAllTemplateVariableMatchesForTableRow(new ArrayList<>(), row));
+                int rowsToRepeat = rowGroup.rowCount();
+                if (rowsToRepeat == 1) {
+                    handleCells(row, rowGroup.forRow(0), scanner);
+                    continue;
                 }
 
-                for (int i = 1; i < rowsToRepeat; i++) {
-                    XWPFTableRow newRow = table.insertNewTableRow(++currentRowIndex);
-                    TableUtil.copyRow(newRow, row);
-                    for (XWPFTableCell cell : newRow.getTableCells()) {
-                        handleParagraphsAndTables(cell, computeRowVariables(variables, matches, i));
-                    }
+                // merge split placeholders once, so that the copies do not have to, then copy the row
+                // in one go and fill every copy with the scans of the first one
+                long start = System.nanoTime();
+                RenderStats stats = resolver.stats();
+                if (!normalised) {
+                    stats.count(RenderListener.Counter.RUNS_MERGED, combineRowRuns(row));
                 }
-                for (XWPFTableCell cell : row.getTableCells()) {
-                    handleParagraphsAndTables(cell, computeRowVariables(variables, matches, 0));
+                Function<String, List<PlaceholderToken>> rowScanner = PlaceholderScanner.caching();
+                List<XWPFTableRow> newRows = TableUtil.insertCopiesAfter(table, row, rowsToRepeat - 1);
+                for (int i = 1; i < rowsToRepeat; i++) {
+                    handleCells(newRows.get(i - 1), rowGroup.forRow(i), rowScanner);
                 }
-                currentRowIndex++;
+                handleCells(row, rowGroup.forRow(0), rowScanner);
+                stats.count(RenderListener.Counter.ROWS_GENERATED, rowsToRepeat - 1);
+                stats.addTime(RenderListener.Phase.ROW_EXPANSION, System.nanoTime() - start);
             }
         }
     }
 
-    private void replaceTemplateVariableInText(IBody context, XWPFParagraph paragraph, Map<String, Object> variables) {
-        combineReplacePatternAcrossMultipleRuns(paragraph);
+    private void handleCells(XWPFTableRow row, VariableResolver resolver, Function<String, List<PlaceholderToken>> scanner) {
+        for (XWPFTableCell cell : row.getTableCells()) {
+            handleParagraphsAndTables(cell, resolver, scanner);
+        }
+    }
+
+    private void replaceTemplateVariableInText(IBody context, XWPFParagraph paragraph, VariableResolver resolver,
+            Function<String, List<PlaceholderToken>> scanner) {
+        if (!normalised) {
+            resolver.stats().count(RenderListener.Counter.RUNS_MERGED, combineReplacePatternAcrossMultipleRuns(paragraph, scanner));
+        }
 
         int index = 0;
         for (XWPFRun run : new ArrayList<>(paragraph.getRuns())) {
-            boolean replaced = false;
+            String text = run.text();
+            List<PlaceholderToken> tokens = scanner.apply(text);
+            if (tokens.isEmpty()) {
+                index++;
+                continue;
+            }
+
             StringBuilder replacedText = new StringBuilder();
-            Matcher matcher = PATTERN.matcher(run.text());
-            while (matcher.find()) {
-                replaced = true;
-                Object substitution = resolveVariable(matcher, variables);
+            int tail = 0;
+            for (PlaceholderToken token : tokens) {
+                replacedText.append(text, tail, token.start());
+                tail = token.end();
+                Object substitution = resolver.resolve(token);
                 if (substitution instanceof List<?> substitutions) {
-                    for (int i = 0, len = substitutions.size(); i < len - 1; i++) {
-                        XWPFParagraph newParagraph = ParagraphUtil.newParagraphBefore(context, paragraph);
-                        ParagraphUtil.copyStyle(newParagraph, paragraph);
-
-                        if (i == 0) {
-                            matcher.appendReplacement(replacedText, Matcher.quoteReplacement(String.valueOf(substitutions.get(i))));
-                            for (XWPFRun prevRun : paragraph.getRuns().subList(0, index)) {
-                                XWPFRun newRun = newParagraph.createRun();
-                                RunUtil.copy(newRun, prevRun);
-                            }
-                            XWPFRun newRun = newParagraph.createRun();
-                            RunUtil.copyStyle(newRun, run);
-                            ParagraphUtil.updateRunText(newParagraph, index, replacedText.toString().split("\n"));
-                            while (index > 0) {
-                                paragraph.removeRun(0);
-                                index--;
-                            }
-                            matcher = PATTERN_FORCE_MATCH.matcher(matcher.appendTail(new StringBuilder()));
-                            matcher.find();
-                            replacedText = new StringBuilder();
-                        } else {
-                            XWPFRun newRun = newParagraph.createRun();
-                            RunUtil.copyStyle(newRun, run);
-                            ParagraphUtil.updateRunText(newParagraph, 0, String.valueOf(substitutions.get(i)).split("\n"));
+                    resolver.stats().count(RenderListener.Counter.PARAGRAPHS_INSERTED, Math.max(substitutions.size() - 1, 0));
+                    if (substitutions.size() > 1) {
+                        // all but the last value go into new paragraphs, inserted in one go, the first of which
+                        // takes over the runs before this one and the text before the placeholder
+                        List<String> texts = new ArrayList<>(substitutions.size() - 1);
+                        texts.add(replacedText.append(substitutions.get(0)).toString());
+                        for (int i = 1, len = substitutions.size(); i < len - 1; i++) {
+                            texts.add(String.valueOf(substitutions.get(i)));
                         }
+                        List<XWPFRun> leadingRuns = new ArrayList<>(paragraph.getRuns().subList(0, index));
+                        ParagraphUtil.insertParagraphsBefore(context, paragraph, leadingRuns, run, texts);
+                        ParagraphUtil.removeRuns(paragraph, leadingRuns);
+                        index = 0;
+                        replacedText = new StringBuilder();
                     }
-                    String lastSubstitution = substitutions.size() == 0 ? "" : String.valueOf(substitutions.get(substitutions.size() - 1));
-                    matcher.appendReplacement(replacedText, Matcher.quoteReplacement(lastSubstitution));
+                    replacedText.append(substitutions.size() == 0 ? "" : String.valueOf(substitutions.get(substitutions.size() - 1)));
                 } else {
-                    matcher.appendReplacement(replacedText, Matcher.quoteReplacement(String.valueOf(substitution)));
+                    replacedText.append(substitution);
                 }
             }
 
-            if (!replaced) {
-                index++;
-                continue;
-            }
-
-            matcher.appendTail(replacedText);
-            index += 1 + ParagraphUtil.updateRunText(paragraph, index, replacedText.toString().split("\n"));
+            replacedText.append(text, tail, text.length());
+            ParagraphUtil.updateRunText(paragraph, index, replacedText.toString().split("\n"));
+            index++;
         }
     }
 
-    private Object resolveVariable(MatchResult matcher, Map<String, Object> variables) {
-        String name = matcher.group(1);
-        Object value = variables.get(name);
-        if (value != null) return value;
-
-        if (checkEnvVar) {
-            String env = System.getenv(name);
-            if (env != null) {
-                value = parseJsonValue(env);
-                variables.put(name, value);
-                return value;
+    private List<PlaceholderToken> retrieveAllTemplateVariableMatchesForTableRow(List<PlaceholderToken> result, XWPFTableRow row) {
+        for (XWPFTableCell cell : row.getTableCells()) {
+            for (XWPFParagraph p : cell.getParagraphs()) {
+                result.addAll(PlaceholderScanner.scan(p.getText()));
             }
-        }
-
-        String defaultValue = matcher.group(2);
-        if (defaultValue != null) {
-            if (defaultValue.startsWith(":?")) {
-                String customMessage = defaultValue.substring(":?".length());
-                StringBuilder fullMessage = new StringBuilder("Missing template variable: ").append(name);
-                if (customMessage.length() > 0) {
-                    fullMessage.append(" (").append(customMessage).append(")");
+            for (XWPFTable t : cell.getTables()) {
+                for (XWPFTableRow r : t.getRows()) {
+                    retrieveAllTemplateVariableMatchesForTableRow(result, r);
                 }
-                throw new MissingTemplateVariableException(fullMessage.toString());
             }
-            value = parseJsonValue(defaultValue.substring(":-".length()));
-            if (defaultValue.startsWith(":=")) {
-                variables.put(name, value);
-            }
-            return value;
         }
-
-        return matcher.group(0);
+        return result;
     }
 
-    private Object parseJsonValue(String value) {
-        try {
-            return new ObjectMapper().readValue(value, Object.class);
-        } catch (JsonProcessingException e) {
-            return value;
-        }
-    }
-
-    private Map<String, Object> computeRowVariables(Map<String, Object> allVariables, Set<MatchResult> matches, int rowIndex) {
-        Map<String, Object> result = new HashMap<>();
-        for (MatchResult match : matches) {
-            String name = match.group(1);
-            Object value = resolveVariable(match, allVariables);
-            boolean isRepeatRowVariable = name.endsWith("[]");
-            if (isRepeatRowVariable && value instanceof List<?> list) {
-                result.put(name, rowIndex < list.size() ? list.get(rowIndex) : "");
-            } else {
-                result.put(name, rowIndex == 0 ? value : "");
-            }
-        }
-        return result;
+    static void combineReplacePatternAcrossMultipleRuns(XWPFParagraph paragraph) {
+        combineReplacePatternAcrossMultipleRuns(paragraph, PlaceholderScanner::scan);
     }
 
-    private Set<MatchResult> retrieveAllTemplateVariableMatchesForTableRow(Set<MatchResult> result, XWPFTableRow row) {
+    /*
+     * Merge the split placeholders of every paragraph in the row, including nested tables.
+     * Returns the number of runs merged.
+     */
+    private static int combineRowRuns(XWPFTableRow row) {
+        int merged = 0;
         for (XWPFTableCell cell : row.getTableCells()) {
-            for (XWPFParagraph p : cell.getParagraphs()) {
-                Matcher matcher = PATTERN.matcher(p.getText());
-                while (matcher.find()) {
-                    result.add(matcher.toMatchResult());
-                }
+            for (XWPFParagraph paragraph : cell.getParagraphs()) {
+                merged += combineReplacePatternAcrossMultipleRuns(paragraph, PlaceholderScanner::scan);
             }
-            for (XWPFTable t : cell.getTables()) {
-                for (XWPFTableRow r : t.getRows()) {
-                    retrieveAllTemplateVariableMatchesForTableRow(result, r);
+            for (XWPFTable table : cell.getTables()) {
+                for (XWPFTableRow nestedRow : table.getRows()) {
+                    merged += combineRowRuns(nestedRow);
                 }
             }
         }
-        return result;
+        return merged;
     }
 
-    private void combineReplacePatternAcrossMultipleRuns(XWPFParagraph paragraph) {
+    /*
+     * Returns the number of runs merged into the run their placeholder starts in.
+     */
+    private static int combineReplacePatternAcrossMultipleRuns(XWPFParagraph paragraph, Function<String, List<PlaceholderToken>> scanner) {
         StringBuilder full = new StringBuilder();
         int start = 0;
         List<RunWrapper> wrappers = new ArrayList<>();
@@ -274,33 +624,122 @@ public class WordDocumentTemplateParser {
             start += text.length();
         }
 
-        int runsDeleted = 0;
+        List<XWPFRun> runsToRemove = new ArrayList<>();
+        int merged = 0;
         int wrapperIndex = 0;
-        Matcher matcher = PATTERN.matcher(full);
-        while (matcher.find()) {
-            while (matcher.start() >= wrappers.get(wrapperIndex).end) {
+        for (PlaceholderToken token : scanner.apply(full.toString())) {
+            while (token.start() >= wrappers.get(wrapperIndex).end) {
                 wrapperIndex++;
             }
             int runStartIndex = wrapperIndex;
 
-            while (matcher.end() > wrappers.get(wrapperIndex).end) {
+            while (token.end() > wrappers.get(wrapperIndex).end) {
                 wrapperIndex++;
             }
             int runEndIndex = wrapperIndex;
 
             if (runStartIndex != runEndIndex) {
+                merged += runEndIndex - runStartIndex;
                 RunWrapper runStart = wrappers.get(runStartIndex);
-                RunUtil.spliceRunTail(runStart.run, runStart.end - matcher.start(), matcher.group(0));
+                RunUtil.spliceRunTail(runStart.run, runStart.end - token.start(), token.text());
                 while (++runStartIndex < runEndIndex) {
-                    paragraph.removeRun(runStartIndex - runsDeleted);
-                    runsDeleted++;
+                    runsToRemove.add(wrappers.get(runStartIndex).run);
                 }
                 RunWrapper runEnd = wrappers.get(runEndIndex);
-                RunUtil.spliceRunHead(runEnd.run, matcher.end() - runEnd.start, "");
+                RunUtil.spliceRunHead(runEnd.run, token.end() - runEnd.start, "");
+            }
+        }
+        // removed in one go, since removing runs one by one is quadratic in the number of runs
+        ParagraphUtil.removeRuns(paragraph, runsToRemove);
+        return merged;
+    }
+
+    @FunctionalInterface
+    private interface DocumentSource {
+        XWPFDocument open() throws IOException;
+    }
+
+    /*
+     * The analysis and the digest of one and the same version of the template, so that a render cache key never
+     * combines the variables of one version with the digest of another.
+     */
+    private static final class Snapshot {
+
+        final TemplateAnalysis analysis;
+        final byte[] digest;
+
+        Snapshot(TemplateAnalysis analysis, byte[] digest) {
+            this.analysis = analysis;
+            this.digest = digest;
+        }
+    }
+
+    @FunctionalInterface
+    private interface SnapshotSource {
+        Snapshot get() throws IOException;
+    }
+
+    /*
+     * Computed by the first fill that needs it, validation or a render cache, and kept.
+     */
+    private static final class ByteSnapshot implements SnapshotSource {
+
+        private final byte[] source;
+        private volatile Snapshot snapshot;
+
+        ByteSnapshot(byte[] source) {
+            this.source = source;
+        }
+
+        @Override
+        public Snapshot get() throws IOException {
+            Snapshot result = snapshot;
+            if (result == null) {
+                snapshot = result = new Snapshot(TemplateAnalysis.analyze(source), CompiledTemplate.digest(source));
             }
+            return result;
         }
     }
 
+    /*
+     * Taken from one read of a template file, and again only once its modification time or size changes,
+     * the same way TemplateCache checks it, so that a render cache hit does not read the whole file, and
+     * an edited template is analysed again.
+     */
+    private static final class FileSnapshot implements SnapshotSource {
+
+        private final File file;
+        private long lastModified, length;
+        private Snapshot snapshot;
+
+        FileSnapshot(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public synchronized Snapshot get() throws IOException {
+            long lastModified = file.lastModified();
+            long length = file.length();
+            if (snapshot == null || lastModified != this.lastModified || length != this.length) {
+                byte[] bytes = Files.readAllBytes(file.toPath());
+                snapshot = new Snapshot(TemplateAnalysis.analyze(bytes), CompiledTemplate.digest(bytes));
+                this.lastModified = lastModified;
+                this.length = length;
+            }
+            return snapshot;
+        }
+    }
+
+    @FunctionalInterface
+    private interface OutputSupplier {
+        OutputStream open() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface OutputWriter {
+        void write(OutputStream outputStream) throws IOException;
+    }
+
     private static class RunWrapper {
         XWPFRun run;
         int start, end;
@@ -1,10 +1,21 @@
 package document.word;
 
+import document.word.variable.JsonVariables;
+import document.word.variable.LazyList;
+import document.word.variable.SystemPropertyVariableSource;
+
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.File;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class WordDocumentTemplateParserMain {
 
@@ -13,24 +24,85 @@ public class WordDocumentTemplateParserMain {
             System.out.println(extraMessage);
         }
         System.out.println("Usage: java " + WordDocumentTemplateParserMain.class.getName() + " -i <input_docx_file> -o <output_docx_file> -v <json_or_file>");
+        System.out.println("       java " + WordDocumentTemplateParserMain.class.getName() + " compile <input_docx_file>...");
+        System.out.println("                         compile templates into artifacts saved next to them, e.g. input.docx" + CompiledTemplate.ARTIFACT_EXTENSION + ",");
+        System.out.println("                         which batch and server mode use instead of compiling the templates again");
         System.out.println("Flags:");
         System.out.println("    -h, --help           print this help");
+        System.out.println("        --cache-dir      keep filled documents in this directory, and copy them from there when the same template");
+        System.out.println("                         is filled with the same variables again, not supported in streaming mode");
+        System.out.println("        --cache-size     the number of megabytes of filled documents kept, 1024 by default, least recently used first out;");
+        System.out.println("                         without --cache-dir, they are kept in memory, which is useful in batch and server mode,");
+        System.out.println("                         not supported in streaming mode");
         System.out.println("    -E, --no-env-var     do not use environment variables for the template");
+        System.out.println("    -P, --system-properties");
+        System.out.println("                         use system properties, e.g. -Dname=value, for variables missing otherwise");
         System.out.println("    -i, --input          the input docx file");
-        System.out.println("    -o, --output         the output docx file");
+        System.out.println("    -L, --list-variables print the placeholders of the input file as json, with their kind and location,");
+        System.out.println("                         instead of rendering it, with a warning on standard error for every malformed one");
+        System.out.println("    -M, --metrics        print the phase timings, counters and latencies as json to standard error once done");
+        System.out.println("    -o, --output         the output docx file, or the output file name pattern in batch mode");
+        System.out.println("                             e.g. 'out/{index}.docx' or 'out/{field:id}.docx'");
+        System.out.println("    -b, --batch          a json array or json lines file of variable objects, each rendered");
+        System.out.println("                         into its own output file, on top of the variables given by -v");
+        System.out.println("    -r, --rows           a \"[]\" variable read from a json lines file, or from a column of a csv file with a header,");
+        System.out.println("                         one row at a time, e.g. 'items[]=items.jsonl' or 'prices[]=items.csv#price',");
+        System.out.println("                         where the column defaults to the variable name without \"[]\"");
+        System.out.println("    -S, --streaming      rewrite the document parts as a stream instead of loading the whole document,");
+        System.out.println("                         which keeps memory use low for very large documents, not supported in batch or server mode");
+        System.out.println("    -t, --threads        the number of documents rendered concurrently in batch mode, 1 by default,");
+        System.out.println("                         or in server mode, the number of processors by default");
+        System.out.println("        --parallel-parts fill the headers, footers, footnotes and endnotes concurrently once the main body is filled,");
+        System.out.println("                         not supported in streaming or batch mode");
+        System.out.println("        --serve          run a local http server rendering the templates in the template directory,");
+        System.out.println("                         instead of a single input file, with the variables given by -v as defaults");
+        System.out.println("        --port           the port of the server, 8080 by default");
+        System.out.println("        --template-dir   the template directory of the server, the current directory by default");
+        System.out.println("        --timeout        the number of seconds a server render may take, 30 by default");
+        System.out.println("        --max-request-size");
+        System.out.println("                         the number of megabytes of json variables a server render request may send, 16 by default");
+        System.out.println("    -V, --validate       check every required \":?\" variable before filling, and report all missing ones at once,");
+        System.out.println("                         at the cost of an extra scan of the template; the server always validates");
         System.out.println("    -v, --variables      either a json object for resolving template variables");
         System.out.println("                             e.g. '{\"author\":\"Andy\"}'");
         System.out.println("                         or a json file path, prefixed by the symbol @");
         System.out.println("                             e.g. '@/home/user/template-variables.json'");
+        System.out.println("                         whose \"[]\" arrays are read one row at a time like -r files");
         System.exit(1);
     }
 
     @SuppressWarnings("unchecked")
     public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("compile")) {
+            if (args.length == 1) printUsage("Missing input file");
+            for (int i = 1; i < args.length; i++) {
+                Path template = Path.of(args[i]);
+                Path artifact = CompiledTemplate.artifactOf(template);
+                CompiledTemplate.compile(template.toFile()).save(artifact);
+                System.out.println("Compiled " + template + " into " + artifact);
+            }
+            return;
+        }
+
         final ObjectMapper objectMapper = new ObjectMapper();
         boolean checkEnvVar = true;
         File input = null;
         File output = null;
+        File batch = null;
+        Integer threads = null;
+        boolean serve = false;
+        int port = 8080;
+        File templateDir = new File(".");
+        int timeout = 30;
+        int maxRequestSize = RenderServer.DEFAULT_MAX_REQUEST_BYTES / (1024 * 1024);
+        boolean streaming = false;
+        boolean parallelParts = false;
+        File cacheDir = null;
+        Integer cacheSize = null;
+        boolean checkSystemProperties = false;
+        RenderMetrics metrics = null;
+        boolean listVariables = false;
+        boolean validation = false;
         Map<String, Object> variables = new HashMap<>();
 
         for (int i = 0; i < args.length; i++) {
@@ -48,15 +120,77 @@ public class WordDocumentTemplateParserMain {
                     if (i == args.length - 1) printUsage("Expected output file");
                     output = new File(args[++i]);
                 }
+                case "-b", "--batch" -> {
+                    if (batch != null) printUsage("Multiple batch files");
+                    if (i == args.length - 1) printUsage("Expected batch file");
+                    batch = new File(args[++i]);
+                }
+                case "-t", "--threads" -> {
+                    if (i == args.length - 1) printUsage("Expected number of threads");
+                    threads = parsePositive(args[++i], "number of threads");
+                }
                 case "-v", "--variables" -> {
                     if (i == args.length - 1) printUsage("Expected json or file");
                     String ref = args[++i];
                     if (ref.startsWith("@")) {
-                        variables.putAll(objectMapper.readValue(new File(ref.substring(1)), Map.class));
+                        variables.putAll(JsonVariables.read(Path.of(ref.substring(1))));
                     } else {
                         variables.putAll(objectMapper.readValue(ref, Map.class));
                     }
                 }
+                case "-r", "--rows" -> {
+                    if (i == args.length - 1) printUsage("Expected variable and file");
+                    String ref = args[++i];
+                    int separator = ref.indexOf('=');
+                    if (separator <= 0) printUsage("Invalid rows: " + ref);
+                    variables.put(ref.substring(0, separator), rowsFile(ref.substring(0, separator), ref.substring(separator + 1)));
+                }
+                case "--serve" -> {
+                    serve = true;
+                }
+                case "--port" -> {
+                    if (i == args.length - 1) printUsage("Expected port");
+                    port = parsePositive(args[++i], "port");
+                }
+                case "--template-dir" -> {
+                    if (i == args.length - 1) printUsage("Expected template directory");
+                    templateDir = new File(args[++i]);
+                }
+                case "--timeout" -> {
+                    if (i == args.length - 1) printUsage("Expected timeout");
+                    timeout = parsePositive(args[++i], "timeout");
+                }
+                case "--max-request-size" -> {
+                    if (i == args.length - 1) printUsage("Expected maximum request size");
+                    maxRequestSize = parsePositive(args[++i], "maximum request size");
+                    if (maxRequestSize >= 2048) printUsage("Invalid maximum request size: " + maxRequestSize);
+                }
+                case "-S", "--streaming" -> {
+                    streaming = true;
+                }
+                case "--parallel-parts" -> {
+                    parallelParts = true;
+                }
+                case "--cache-dir" -> {
+                    if (i == args.length - 1) printUsage("Expected cache directory");
+                    cacheDir = new File(args[++i]);
+                }
+                case "--cache-size" -> {
+                    if (i == args.length - 1) printUsage("Expected cache size");
+                    cacheSize = parsePositive(args[++i], "cache size");
+                }
+                case "-L", "--list-variables" -> {
+                    listVariables = true;
+                }
+                case "-V", "--validate" -> {
+                    validation = true;
+                }
+                case "-M", "--metrics" -> {
+                    metrics = new RenderMetrics();
+                }
+                case "-P", "--system-properties" -> {
+                    checkSystemProperties = true;
+                }
                 case "-E", "--no-env-var" -> {
                     checkEnvVar = false;
                 }
@@ -66,13 +200,123 @@ public class WordDocumentTemplateParserMain {
             }
         }
 
+        if (batch != null && streaming) printUsage("Streaming is not supported in batch mode");
+        if (batch != null && parallelParts) printUsage("Parallel parts are not supported in batch mode");
+        if (serve && streaming) printUsage("Streaming is not supported in server mode");
+        if (streaming && parallelParts) printUsage("Parallel parts are not supported in streaming mode");
+        if (streaming && (cacheDir != null || cacheSize != null)) printUsage("The render cache is not supported in streaming mode");
+
+        RenderCache renderCache = null;
+        if (cacheDir != null || cacheSize != null) {
+            long maxBytes = (cacheSize == null ? 1024 : cacheSize) * 1024L * 1024L;
+            renderCache = cacheDir == null ? RenderCache.inMemory(maxBytes) : RenderCache.onDisk(cacheDir.toPath(), maxBytes);
+        }
+
+        if (serve) {
+            if (threads == null) threads = Runtime.getRuntime().availableProcessors();
+            RenderServer server = new RenderServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), templateDir,
+                    variables, checkEnvVar, threads, timeout * 1000L);
+            if (checkSystemProperties) server.addVariableSource(new SystemPropertyVariableSource());
+            server.setRenderCache(renderCache);
+            server.setMaxRequestBytes(maxRequestSize * 1024 * 1024);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            server.start();
+            System.out.println("Serving templates from " + templateDir.getCanonicalPath() + " on http://localhost:" + server.getPort());
+            return;
+        }
+
         if (input == null) {
             printUsage("Missing input file");
         }
+        if (listVariables) {
+            TemplateAnalysis analysis = TemplateAnalysis.analyze(input);
+            System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(analysis.getPlaceholders()));
+            for (MalformedPlaceholder malformed : analysis.getMalformed()) {
+                System.err.println("Warning: malformed placeholder " + malformed);
+            }
+            return;
+        }
         if (output == null) {
             printUsage("Missing output file");
         }
 
-        new WordDocumentTemplateParser(input, variables, checkEnvVar).fill(output);
+        if (batch == null && streaming) {
+            StreamingWordDocumentTemplateParser parser = new StreamingWordDocumentTemplateParser(input, variables, checkEnvVar);
+            parser.setValidation(validation);
+            if (checkSystemProperties) parser.addVariableSource(new SystemPropertyVariableSource());
+            if (metrics != null) parser.setRenderListener(input.getName(), metrics);
+            try {
+                parser.fill(output);
+            } finally {
+                printMetrics(objectMapper, metrics);
+            }
+            return;
+        }
+        if (batch == null) {
+            WordDocumentTemplateParser parser = new WordDocumentTemplateParser(input, variables, checkEnvVar);
+            parser.setValidation(validation);
+            if (checkSystemProperties) parser.addVariableSource(new SystemPropertyVariableSource());
+            if (metrics != null) parser.setRenderListener(input.getName(), metrics);
+            parser.setParallelParts(parallelParts);
+            parser.setRenderCache(renderCache);
+            try {
+                parser.fill(output);
+            } finally {
+                printMetrics(objectMapper, metrics);
+            }
+            return;
+        }
+
+        if (threads == null) threads = 1;
+        CompiledTemplate template = CompiledTemplate.compileOrOpen(input);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (MappingIterator<Map<String, Object>> records = objectMapper.readerFor(Map.class).readValues(batch)) {
+            BatchRenderer renderer = new BatchRenderer(template, variables, checkEnvVar, executor, threads * 2);
+            if (checkSystemProperties) renderer.addVariableSource(new SystemPropertyVariableSource());
+            if (metrics != null) renderer.setRenderListener(input.getName(), metrics);
+            renderer.setRenderCache(renderCache);
+            renderer.setValidation(validation);
+            List<BatchRenderer.Failure> failures = renderer.render(records, output.getPath());
+            printMetrics(objectMapper, metrics);
+            for (BatchRenderer.Failure failure : failures) {
+                System.err.println(failure);
+            }
+            if (!failures.isEmpty()) {
+                System.exit(2);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /*
+     * A csv file if it has the .csv extension, optionally followed by #column, otherwise a json lines file,
+     * for which a #suffix is ignored as well.
+     */
+    private static LazyList rowsFile(String name, String file) {
+        int hash = file.lastIndexOf('#');
+        String path = hash < 0 ? file : file.substring(0, hash);
+        if (!path.toLowerCase().endsWith(".csv")) {
+            return LazyList.jsonLines(Path.of(path));
+        }
+        String column = hash < 0 ? name.replace("[]", "") : file.substring(hash + 1);
+        return LazyList.csvColumn(Path.of(path), column);
+    }
+
+    private static void printMetrics(ObjectMapper objectMapper, RenderMetrics metrics) throws IOException {
+        if (metrics != null) {
+            System.err.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(metrics.toMap()));
+        }
+    }
+
+    private static int parsePositive(String value, String name) {
+        int result = 0;
+        try {
+            result = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            printUsage("Invalid " + name + ": " + value);
+        }
+        if (result <= 0) printUsage("Invalid " + name + ": " + value);
+        return result;
     }
 }
@@ -1,10 +1,26 @@
 package document.word.exception;
 
+import java.util.List;
+
 public class MissingTemplateVariableException extends IllegalArgumentException {
 
 	private static final long serialVersionUID = -4349613558002209829L;
 
+    private final List<String> missingVariables;
+
 	public MissingTemplateVariableException(String message) {
+        this(message, List.of());
+    }
+
+    public MissingTemplateVariableException(String message, List<String> missingVariables) {
         super(message);
+        this.missingVariables = List.copyOf(missingVariables);
+    }
+
+    /*
+     * The names of all missing variables when they were checked before filling, otherwise the one that was found missing.
+     */
+    public List<String> getMissingVariables() {
+        return missingVariables;
     }
 }
@@ -0,0 +1,107 @@
+package document.word.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class JsonUtil {
+
+    private static final ObjectReader READER = new ObjectMapper().readerFor(Object.class);
+
+    static final int MAX_CACHED_VALUES = 4096;
+    // least recently used first out, so that values seen once, e.g. of system properties that change, do not stay
+    private static final Map<String, Object> CACHED_VALUES = new LinkedHashMap<>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+            return size() > MAX_CACHED_VALUES;
+        }
+    };
+    private static final Object CACHED_NULL = new Object();
+
+    private JsonUtil() {
+        throw new UnsupportedOperationException(getClass() + " cannot be instantiated");
+    }
+
+    /*
+     * Parse the value as json, or return it as is if it is not valid json.
+     *
+     * Text that cannot start a json value, which is the case for most plain text values, is returned
+     * without going through Jackson at all, saving the cost of building and throwing a parse exception.
+     */
+    public static Object parseJsonValue(String value) {
+        if (!mayBeJson(value)) {
+            return value;
+        }
+        try {
+            return READER.readValue(value);
+        } catch (JsonProcessingException e) {
+            return value;
+        }
+    }
+
+    /*
+     * Same as parseJsonValue, but the result is cached by the raw value, which suits the default values
+     * written in a template as they are parsed again for every occurrence and every table row. The cache
+     * keeps the MAX_CACHED_VALUES most recently used values.
+     *
+     * Cached lists and maps are unmodifiable since they are shared between renders.
+     */
+    public static Object parseCachedJsonValue(String value) {
+        Object result;
+        synchronized (CACHED_VALUES) {
+            result = CACHED_VALUES.get(value);
+        }
+        if (result == null) {
+            // parsed outside the lock, so that a large value does not hold up the lookups of other renders
+            result = unmodifiable(parseJsonValue(value));
+            synchronized (CACHED_VALUES) {
+                CACHED_VALUES.put(value, result == null ? CACHED_NULL : result);
+            }
+        }
+        return result == CACHED_NULL ? null : result;
+    }
+
+    /*
+     * Jackson skips these whitespace characters only, and every json value starts with one of the characters below.
+     */
+    private static boolean mayBeJson(String value) {
+        for (int i = 0, len = value.length(); i < len; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case ' ', '\t', '\n', '\r' -> { }
+                case '{', '[', '"', '-', 't', 'f', 'n' -> {
+                    return true;
+                }
+                default -> {
+                    return c >= '0' && c <= '9';
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Object unmodifiable(Object value) {
+        if (value instanceof List<?> list) {
+            List<Object> result = new ArrayList<>(list.size());
+            for (Object item : list) {
+                result.add(unmodifiable(item));
+            }
+            return Collections.unmodifiableList(result);
+        }
+        if (value instanceof Map<?, ?> map) {
+            Map<Object, Object> result = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                result.put(entry.getKey(), unmodifiable(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(result);
+        }
+        return value;
+    }
+}
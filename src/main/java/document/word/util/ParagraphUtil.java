@@ -1,12 +1,37 @@
 package document.word.util;
 
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 import org.apache.poi.xwpf.usermodel.IBody;
+import org.apache.poi.xwpf.usermodel.IBodyElement;
+import org.apache.poi.xwpf.usermodel.IRunElement;
+import org.apache.poi.xwpf.usermodel.XWPFFieldRun;
+import org.apache.poi.xwpf.usermodel.XWPFHyperlinkRun;
 import org.apache.poi.xwpf.usermodel.XWPFParagraph;
 import org.apache.poi.xwpf.usermodel.XWPFRun;
 import org.apache.xmlbeans.XmlCursor;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTP;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTR;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTRPr;
 
 public final class ParagraphUtil {
 
+    private static final Field RUNS_FIELD = paragraphField("runs");
+    private static final Field IRUNS_FIELD = paragraphField("iruns");
+    private static final ClassValue<Field[]> BODY_FIELDS = new ClassValue<>() {
+        @Override
+        protected Field[] computeValue(Class<?> type) {
+            Field paragraphs = bodyField(type, "paragraphs");
+            Field bodyElements = bodyField(type, "bodyElements");
+            return paragraphs == null || bodyElements == null ? null : new Field[] {paragraphs, bodyElements};
+        }
+    };
+
     private ParagraphUtil() {
         throw new UnsupportedOperationException(getClass() + " cannot be instantiated");
     }
@@ -29,19 +54,152 @@ public final class ParagraphUtil {
         target.getCTP().setPPr(source.getCTP().getPPr());
     }
 
-    public static int updateRunText(XWPFParagraph paragraph, int runIndex, String[] linesWithBr) {
-        XWPFRun run = paragraph.getRuns().get(runIndex);
-        RunUtil.replaceRunText(run, linesWithBr.length == 0 ? "" : linesWithBr[0]);
-        for (int i = 1; i < linesWithBr.length; i++) {
-            XWPFRun newRunWithBr = paragraph.insertNewRun(++runIndex);
-            RunUtil.copyStyle(newRunWithBr, run);
-            newRunWithBr.addBreak();
+    /*
+     * Replace the text of the run with the lines, separated by br nodes within the same run, see RunUtil.replaceRunText.
+     */
+    public static void updateRunText(XWPFParagraph paragraph, int runIndex, String[] linesWithBr) {
+        RunUtil.replaceRunText(paragraph.getRuns().get(runIndex).getCTR(), linesWithBr);
+    }
+
+    /*
+     * Insert one paragraph per text right before the target, all at once, and return them in order.
+     *
+     * Each paragraph has the properties of the target and a run with the style of styleRun holding the text,
+     * with br nodes for line breaks as in updateRunText; the first one also starts with copies of the leading runs.
+     *
+     * Inserting paragraphs one by one with IBody.insertNewParagraph locates the insert position in the body
+     * and shifts the body's lists for every paragraph, which is quadratic for long lists. Here the xml of all
+     * paragraphs is built from a prototype, inserted with a single cursor, and the body's lists are
+     * updated once. Bodies whose lists cannot be found get their paragraphs one by one as before.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<XWPFParagraph> insertParagraphsBefore(IBody parent, XWPFParagraph target, List<XWPFRun> leadingRuns,
+            XWPFRun styleRun, List<String> texts) {
+        List<XWPFParagraph> result = new ArrayList<>(texts.size());
+        if (texts.isEmpty()) return result;
+
+        Field[] fields = BODY_FIELDS.get(parent.getClass());
+        if (fields == null) {
+            for (int i = 0; i < texts.size(); i++) {
+                XWPFParagraph paragraph = newParagraphBefore(parent, target);
+                copyStyle(paragraph, target);
+                if (i == 0) {
+                    for (XWPFRun run : leadingRuns) {
+                        RunUtil.copy(paragraph.createRun(), run);
+                    }
+                }
+                RunUtil.copyStyle(paragraph.createRun(), styleRun);
+                updateRunText(paragraph, paragraph.getRuns().size() - 1, texts.get(i).split("\n"));
+                result.add(paragraph);
+            }
+            return result;
+        }
+
+        CTP prototype = CTP.Factory.newInstance();
+        if (target.getCTP().getPPr() != null) {
+            prototype.setPPr(target.getCTP().getPPr());
+        }
+        CTRPr style = styleRun.getCTR().getRPr();
+        List<CTP> paragraphs = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            CTP paragraph = (CTP) prototype.copy();
+            if (i == 0) {
+                for (XWPFRun run : leadingRuns) {
+                    paragraph.addNewR().set(run.getCTR());
+                }
+            }
+            CTR run = paragraph.addNewR();
+            if (style != null) run.setRPr(style);
+            RunUtil.replaceRunText(run, texts.get(i).split("\n"));
+            paragraphs.add(paragraph);
+        }
+
+        try (XmlCursor cursor = target.getCTP().newCursor()) {
+            String uri = CTP.type.getName().getNamespaceURI();
+            for (CTP paragraph : paragraphs) {
+                // the cursor ends up inside the new element, then moves on to the target again
+                cursor.beginElement("p", uri);
+                cursor.toParent();
+                CTP inserted = (CTP) cursor.getObject();
+                inserted.set(paragraph);
+                result.add(new XWPFParagraph(inserted, parent));
+                cursor.toEndToken();
+                cursor.toNextToken();
+            }
+        }
+
+        try {
+            List<XWPFParagraph> bodyParagraphs = (List<XWPFParagraph>) fields[0].get(parent);
+            List<IBodyElement> bodyElements = (List<IBodyElement>) fields[1].get(parent);
+            bodyParagraphs.addAll(indexOf(bodyParagraphs, target), result);
+            bodyElements.addAll(indexOf(bodyElements, target), result);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+        return result;
+    }
+
+    /*
+     * Remove all given runs from the paragraph at once.
+     *
+     * XWPFParagraph.removeRun shifts both internal run lists and searches iruns for every run removed,
+     * which makes removing many runs from a long paragraph quadratic. Here the xml of each run is removed
+     * with a cursor, and the internal lists are filtered once.
+     *
+     * Hyperlink and field runs are still removed with removeRun, which also removes their enclosing
+     * element when it becomes empty.
+     */
+    @SuppressWarnings("unchecked")
+    public static void removeRuns(XWPFParagraph paragraph, Collection<XWPFRun> runsToRemove) {
+        Set<XWPFRun> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (XWPFRun run : runsToRemove) {
+            if (run instanceof XWPFHyperlinkRun || run instanceof XWPFFieldRun) {
+                paragraph.removeRun(paragraph.getRuns().indexOf(run));
+                continue;
+            }
+            try (XmlCursor cursor = run.getCTR().newCursor()) {
+                cursor.removeXml();
+            }
+            removed.add(run);
+        }
+        if (removed.isEmpty()) return;
+
+        try {
+            ((List<XWPFRun>) RUNS_FIELD.get(paragraph)).removeIf(removed::contains);
+            ((List<IRunElement>) IRUNS_FIELD.get(paragraph)).removeIf(removed::contains);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int indexOf(List<?> list, Object element) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == element) return i;
+        }
+        throw new IllegalArgumentException("Paragraph not found in its body");
+    }
+
+    private static Field bodyField(Class<?> type, String name) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            try {
+                Field field = c.getDeclaredField(name);
+                if (!List.class.isAssignableFrom(field.getType())) return null;
+                field.setAccessible(true);
+                return field;
+            } catch (NoSuchFieldException e) {
+                // look further up
+            }
+        }
+        return null;
+    }
 
-            XWPFRun newRunWithText = paragraph.insertNewRun(++runIndex);
-            RunUtil.copyStyle(newRunWithText, run);
-            newRunWithText.setText(linesWithBr[i]);
+    private static Field paragraphField(String name) {
+        try {
+            Field field = XWPFParagraph.class.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
         }
-        int runsAdded = linesWithBr.length == 0 ? 0 : (linesWithBr.length - 1) * 2;
-        return runsAdded;
     }
 }
@@ -1,13 +1,16 @@
 package document.word.util;
 
-import java.util.ArrayList;
-import java.util.List;
+import javax.xml.namespace.QName;
 import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.impl.xb.xmlschema.SpaceAttribute;
 import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTR;
 import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTText;
 
 public final class RunUtil {
 
+    private static final QName XML_SPACE = new QName("http://www.w3.org/XML/1998/namespace", "space");
+
     private RunUtil() {
         throw new UnsupportedOperationException(getClass() + " cannot be instantiated");
     }
@@ -22,24 +25,49 @@ public final class RunUtil {
 
     /*
      * Replace multiple text and br nodes under the same run with the given text.
+     */
+    public static void replaceRunText(XWPFRun run, String text) {
+        replaceRunText(run.getCTR(), new String[] { text });
+    }
+
+    /*
+     * Replace multiple text and br nodes under the same run with the given lines, with a br node between
+     * every two lines, all within the run: <w:t>line 1</w:t><w:br/><w:t>line 2</w:t>.
      *
      * Apache POI has limited abstraction methods to effectively manipulate nodes under the same run,
      * possibly because a typical Word document program will break those into multiple runs anyway.
-     *
-     * For example, inserting a br node between two existing text nodes is impossible with only high level methods from XWPFRun or CTR.
-     * (You need to access the xmlbeans directly via CTRImpl.get_store, and even then it is very messy and might break other stuff.)
-     *
-     * It is easier to break those nodes into multiple runs, each with individual text and br nodes.
+     * For example, inserting a br node between two existing text nodes is impossible with only high level
+     * methods from XWPFRun or CTR, which always append, so the nodes after the first text node are
+     * inserted with a cursor instead.
      */
-    public static void replaceRunText(XWPFRun run, String text) {
-        CTR ctr = run.getCTR();
-        for (int i = 0, len = ctr.getBrList().size(); i < len; i++) {
+    public static void replaceRunText(CTR ctr, String[] lines) {
+        for (int i = 0, len = ctr.sizeOfBrArray(); i < len; i++) {
             ctr.removeBr(0);
         }
-        for (int i = 1, len = ctr.getTList().size(); i < len; i++) {
+        for (int i = 1, len = ctr.sizeOfTArray(); i < len; i++) {
             ctr.removeT(1);
         }
-        run.setText(text, 0);
+        CTText first = ctr.sizeOfTArray() == 0 ? ctr.addNewT() : ctr.getTArray(0);
+        first.setStringValue(lines.length == 0 ? "" : lines[0]);
+        if (preserveSpace(first.getStringValue())) {
+            first.setSpace(SpaceAttribute.Space.PRESERVE);
+        }
+        if (lines.length < 2) return;
+
+        try (XmlCursor cursor = first.newCursor()) {
+            cursor.toEndToken();
+            cursor.toNextToken();
+            String uri = CTR.type.getName().getNamespaceURI();
+            for (int i = 1; i < lines.length; i++) {
+                cursor.insertElement("br", uri);
+                cursor.beginElement("t", uri);
+                if (preserveSpace(lines[i])) {
+                    cursor.insertAttributeWithValue(XML_SPACE, "preserve");
+                }
+                cursor.insertChars(lines[i]);
+                cursor.toNextToken();
+            }
+        }
     }
 
     /*
@@ -48,16 +76,16 @@ public final class RunUtil {
      */
     public static void spliceRunTail(XWPFRun run, int numOfChar, String textToInsert) {
         CTR ctr = run.getCTR();
-        List<CTText> texts = new ArrayList<>(ctr.getTList());
-        int i = texts.size() - 1;
+        CTText[] texts = ctr.getTArray();
+        int i = texts.length - 1;
         while (i >= 0 && numOfChar > 0) {
-            String text = texts.get(i).getStringValue();
+            String text = texts[i].getStringValue();
             if (text.length() >= numOfChar) {
-                texts.get(i).setStringValue(text.substring(0, text.length() - numOfChar) + textToInsert);
+                texts[i].setStringValue(text.substring(0, text.length() - numOfChar) + textToInsert);
                 return;
             }
             if (i == 0) {
-                texts.get(0).setStringValue(textToInsert);
+                texts[0].setStringValue(textToInsert);
                 return;
             }
             ctr.removeT(i);
@@ -72,16 +100,16 @@ public final class RunUtil {
      */
     public static void spliceRunHead(XWPFRun run, int numOfChar, String textToInsert) {
         CTR ctr = run.getCTR();
-        List<CTText> texts = new ArrayList<>(ctr.getTList());
+        CTText[] texts = ctr.getTArray();
         int i = 0;
-        while (i < texts.size() && numOfChar > 0) {
-            String text = texts.get(i).getStringValue();
+        while (i < texts.length && numOfChar > 0) {
+            String text = texts[i].getStringValue();
             if (text.length() >= numOfChar) {
-                texts.get(i).setStringValue(textToInsert + text.substring(numOfChar));
+                texts[i].setStringValue(textToInsert + text.substring(numOfChar));
                 return;
             }
-            if (i == texts.size() - 1) {
-                texts.get(i).setStringValue(textToInsert);
+            if (i == texts.length - 1) {
+                texts[i].setStringValue(textToInsert);
                 return;
             }
             ctr.removeT(0);
@@ -89,4 +117,11 @@ public final class RunUtil {
             i++;
         }
     }
+
+    /*
+     * Same as XWPFRun.setText: spaces at either end would be dropped by Word otherwise.
+     */
+    private static boolean preserveSpace(String text) {
+        return !text.isEmpty() && (Character.isWhitespace(text.charAt(0)) || Character.isWhitespace(text.charAt(text.length() - 1)));
+    }
 }
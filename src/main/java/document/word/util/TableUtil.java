@@ -1,10 +1,18 @@
 package document.word.util;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
 import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import org.apache.xmlbeans.XmlCursor;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTRow;
 
 public final class TableUtil {
 
+    private static final Field TABLE_CELLS_FIELD = declaredField(XWPFTableRow.class, "tableCells");
+    private static final Field TABLE_ROWS_FIELD = declaredField(XWPFTable.class, "tableRows");
+
     private TableUtil() {
         throw new UnsupportedOperationException(getClass() + " cannot be instantiated");
     }
@@ -28,11 +36,60 @@ public final class TableUtil {
             // when calling doc.write(), it still writes old row data.
             // Reference: https://isurunuwanthilaka.medium.com/lets-play-with-apache-poi-186aa8d8ec71
 
-            Field field = XWPFTableRow.class.getDeclaredField("tableCells");
-            field.setAccessible(true);
-            field.set(target, null);
+            TABLE_CELLS_FIELD.set(target, null);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /*
+     * Insert the given number of copies of the row right after it, and return them in order.
+     *
+     * Inserting rows one by one with XWPFTable.insertNewTableRow and copyRow shifts the table's row list
+     * and locates the insert position in the xml for every row, which is quadratic for large tables.
+     * Here the xml of the row is copied in place with a cursor, and the row list is updated once.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<XWPFTableRow> insertCopiesAfter(XWPFTable table, XWPFTableRow row, int count) {
+        List<XWPFTableRow> result = new ArrayList<>(count);
+        if (count <= 0) return result;
+
+        try (XmlCursor source = row.getCtRow().newCursor(); XmlCursor target = row.getCtRow().newCursor()) {
+            if (!target.toNextSibling()) {
+                target.toParent();
+                target.toEndToken();
+            }
+            for (int i = 0; i < count; i++) {
+                source.copyXml(target);
+            }
+        }
+        try (XmlCursor cursor = row.getCtRow().newCursor()) {
+            for (int i = 0; i < count; i++) {
+                cursor.toNextSibling();
+                result.add(new XWPFTableRow((CTRow) cursor.getObject(), table));
+            }
+        }
+
+        try {
+            List<XWPFTableRow> tableRows = (List<XWPFTableRow>) TABLE_ROWS_FIELD.get(table);
+            int index = 0;
+            while (tableRows.get(index) != row) {
+                index++;
+            }
+            tableRows.addAll(index + 1, result);
         } catch (ReflectiveOperationException e) {
             throw new RuntimeException(e);
         }
+        return result;
+    }
+
+    private static Field declaredField(Class<?> type, String name) {
+        try {
+            Field field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
     }
 }
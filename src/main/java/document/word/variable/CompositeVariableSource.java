@@ -0,0 +1,39 @@
+package document.word.variable;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Looks up a variable in each source in turn, and remembers the outcome, including misses.
+ *
+ * Every name is therefore resolved at most once per composite, which makes the result stable for its
+ * whole lifetime, even across threads, and makes repeated misses cost a single hash lookup.
+ */
+public class CompositeVariableSource implements VariableSource {
+
+    private static final Object MISSING = new Object();
+
+    private final List<VariableSource> sources;
+    private final Map<String, Object> resolved = new ConcurrentHashMap<>();
+
+    public CompositeVariableSource(List<? extends VariableSource> sources) {
+        this.sources = List.copyOf(sources);
+    }
+
+    @Override
+    public Object lookup(String name) {
+        Object value = resolved.computeIfAbsent(name, this::lookupSources);
+        return value == MISSING ? null : value;
+    }
+
+    private Object lookupSources(String name) {
+        for (VariableSource source : sources) {
+            Object value = source.lookup(name);
+            if (value != null) {
+                return value;
+            }
+        }
+        return MISSING;
+    }
+}
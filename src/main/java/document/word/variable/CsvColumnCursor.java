@@ -0,0 +1,108 @@
+package document.word.variable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/*
+ * Reads one column of a csv file, record by record.
+ *
+ * Fields are separated by commas and may be quoted with double quotes, in which case they can contain commas,
+ * line breaks and doubled quotes, as described in RFC 4180. The first record is the header naming the columns.
+ */
+final class CsvColumnCursor implements LazyList.Cursor {
+
+    private final BufferedReader reader;
+    private final int columnIndex;
+    private List<String> record;
+
+    CsvColumnCursor(Path file, String column) throws IOException {
+        this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        try {
+            List<String> header = readRecord();
+            this.columnIndex = header == null ? -1 : header.indexOf(column);
+            if (columnIndex < 0) {
+                throw new IOException("No column " + column + " in " + file);
+            }
+            this.record = readRecord();
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return record != null;
+    }
+
+    /*
+     * The field of the column, or an empty string if the record is shorter.
+     */
+    @Override
+    public Object next() throws IOException {
+        if (record == null) {
+            throw new NoSuchElementException();
+        }
+        String result = columnIndex < record.size() ? record.get(columnIndex) : "";
+        record = readRecord();
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /*
+     * The fields of the next record, or null at the end of the file.
+     */
+    private List<String> readRecord() throws IOException {
+        int c = reader.read();
+        if (c < 0) return null;
+
+        List<String> result = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c < 0) {
+                    throw new IOException("Unterminated quoted csv field");
+                }
+                if (c == '"') {
+                    reader.mark(1);
+                    if (reader.read() == '"') {
+                        field.append('"');
+                    } else {
+                        reader.reset();
+                        quoted = false;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                result.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r' || c < 0) {
+                if (c == '\r') {
+                    reader.mark(1);
+                    if (reader.read() != '\n') {
+                        reader.reset();
+                    }
+                }
+                result.add(field.toString());
+                return result;
+            } else {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package document.word.variable;
+
+import document.word.util.JsonUtil;
+
+import java.util.Map;
+
+/*
+ * Environment variables, parsed as json when possible.
+ *
+ * The environment of a JVM never changes, so it is read once and shared.
+ */
+public final class EnvironmentVariableSource implements VariableSource {
+
+    private static final EnvironmentVariableSource INSTANCE = new EnvironmentVariableSource(System.getenv());
+
+    private final Map<String, String> environment;
+
+    private EnvironmentVariableSource(Map<String, String> environment) {
+        this.environment = Map.copyOf(environment);
+    }
+
+    public static EnvironmentVariableSource getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public Object lookup(String name) {
+        String value = environment.get(name);
+        return value == null ? null : JsonUtil.parseCachedJsonValue(value);
+    }
+}
@@ -0,0 +1,36 @@
+package document.word.variable;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/*
+ * Reads a json lines file, one json value per line.
+ */
+final class JsonLinesCursor implements LazyList.Cursor {
+
+    private static final ObjectReader READER = new ObjectMapper().readerFor(Object.class);
+
+    private final MappingIterator<Object> values;
+
+    JsonLinesCursor(Path file) throws IOException {
+        this.values = READER.readValues(file.toFile());
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        return values.hasNextValue();
+    }
+
+    @Override
+    public Object next() throws IOException {
+        return values.nextValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        values.close();
+    }
+}
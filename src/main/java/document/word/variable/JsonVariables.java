@@ -0,0 +1,105 @@
+package document.word.variable;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/*
+ * Reads a json object of template variables from a file with Jackson's streaming parser.
+ *
+ * The arrays of "[]" variables are skipped rather than read: each becomes a LazyList that reads the array
+ * from the file again, element by element, whenever the variable is rendered. All other values are read
+ * as usual, the same way as ObjectMapper.readValue(file, Map.class), and so are the arrays of a file that
+ * is not UTF-8, since the array could not be found again by its byte offset.
+ */
+public final class JsonVariables {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final JsonFactory JSON_FACTORY = OBJECT_MAPPER.getFactory();
+
+    private JsonVariables() {
+        throw new UnsupportedOperationException(getClass() + " cannot be instantiated");
+    }
+
+    public static Map<String, Object> read(Path file) throws IOException {
+        Map<String, Object> result = new HashMap<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(file.toFile())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a json object in " + file);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken token = parser.nextToken();
+                // the byte offset is only known when the file is UTF-8, otherwise it is read by characters
+                long offset = parser.currentTokenLocation().getByteOffset();
+                if (name.endsWith("[]") && token == JsonToken.START_ARRAY && offset >= 0) {
+                    parser.skipChildren();
+                    result.put(name, jsonArray(file, offset));
+                } else {
+                    result.put(name, parser.readValueAs(Object.class));
+                }
+            }
+        }
+        return result;
+    }
+
+    /*
+     * The json array starting at the given byte offset of the file.
+     */
+    private static LazyList jsonArray(Path file, long offset) {
+        return () -> {
+            InputStream inputStream = Files.newInputStream(file);
+            try {
+                inputStream.skipNBytes(offset);
+                JsonParser parser = JSON_FACTORY.createParser(inputStream);
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new IOException("Expected a json array at offset " + offset + " of " + file + ", was the file changed?");
+                }
+                return new JsonArrayCursor(parser);
+            } catch (IOException e) {
+                inputStream.close();
+                throw e;
+            }
+        };
+    }
+
+    private static final class JsonArrayCursor implements LazyList.Cursor {
+
+        private final JsonParser parser;
+        private JsonToken next;
+
+        JsonArrayCursor(JsonParser parser) throws IOException {
+            this.parser = parser;
+            this.next = parser.nextToken();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != JsonToken.END_ARRAY && next != null;
+        }
+
+        @Override
+        public Object next() throws IOException {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Object result = parser.readValueAs(Object.class);
+            next = parser.nextToken();
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // closes the file as well, since the parser owns the stream by default
+            parser.close();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package document.word.variable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * The value of a "[]" variable whose elements are read one at a time, every time the variable is rendered,
+ * instead of being held in memory as a List, e.g. the rows of a very large table kept in a side file.
+ *
+ * StreamingWordDocumentTemplateParser fills and writes one table row per element as it reads them, so its heap
+ * stays bounded however many rows a table expands into. Everywhere else, such as in WordDocumentTemplateParser,
+ * which holds the whole document in memory anyway, or for a variable that is not a "[]" variable, the elements
+ * are read into a List first.
+ *
+ * Every render opens its own cursor, so a LazyList can be shared by concurrent renders as long as its
+ * source does not change.
+ */
+@FunctionalInterface
+public interface LazyList {
+
+    Cursor open() throws IOException;
+
+    default List<Object> toList() throws IOException {
+        List<Object> result = new ArrayList<>();
+        try (Cursor cursor = open()) {
+            while (cursor.hasNext()) {
+                result.add(cursor.next());
+            }
+        }
+        return result;
+    }
+
+    /*
+     * A json lines file, one json value per line.
+     */
+    static LazyList jsonLines(Path file) {
+        return () -> new JsonLinesCursor(file);
+    }
+
+    /*
+     * One column of a UTF-8 csv file with a header line, as text.
+     */
+    static LazyList csvColumn(Path file, String column) {
+        return () -> new CsvColumnCursor(file, column);
+    }
+
+    interface Cursor extends Closeable {
+
+        boolean hasNext() throws IOException;
+
+        Object next() throws IOException;
+    }
+}
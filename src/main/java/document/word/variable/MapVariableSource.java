@@ -0,0 +1,18 @@
+package document.word.variable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class MapVariableSource implements VariableSource {
+
+    private final Map<String, Object> variables;
+
+    public MapVariableSource(Map<String, Object> variables) {
+        this.variables = new HashMap<>(variables);
+    }
+
+    @Override
+    public Object lookup(String name) {
+        return variables.get(name);
+    }
+}
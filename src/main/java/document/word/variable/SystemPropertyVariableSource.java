@@ -0,0 +1,28 @@
+package document.word.variable;
+
+import document.word.util.JsonUtil;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/*
+ * A snapshot of the system properties taken on construction, parsed as json when possible.
+ */
+public class SystemPropertyVariableSource implements VariableSource {
+
+    private final Map<String, String> properties = new HashMap<>();
+
+    public SystemPropertyVariableSource() {
+        Properties systemProperties = System.getProperties();
+        for (String name : systemProperties.stringPropertyNames()) {
+            properties.put(name, systemProperties.getProperty(name));
+        }
+    }
+
+    @Override
+    public Object lookup(String name) {
+        String value = properties.get(name);
+        return value == null ? null : JsonUtil.parseCachedJsonValue(value);
+    }
+}
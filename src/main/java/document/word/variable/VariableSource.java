@@ -0,0 +1,13 @@
+package document.word.variable;
+
+/*
+ * A source of template variable values, consulted when a variable is missing from the variables given to the parser.
+ */
+@FunctionalInterface
+public interface VariableSource {
+
+    /*
+     * Returns the value of the variable, or null if this source does not know it.
+     */
+    Object lookup(String name);
+}
@@ -0,0 +1,112 @@
+package document.word;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import document.word.exception.MissingTemplateVariableException;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BatchRendererTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    public void renderContinuesAfterFailureTest() throws IOException {
+        CompiledTemplate template = CompiledTemplate.compile(new File("src/test/resources/test-input-with-error.docx"));
+        List<Map<String, Object>> records = List.of(
+                Map.of("id", "a", "name", "Andy"),
+                Map.of("id", "b"),
+                Map.of("id", "c", "name", "Cathy"));
+
+        List<BatchRenderer.Failure> failures = new BatchRenderer(template, Map.of(), false)
+                .render(records.iterator(), tempDir.getPath() + "/out/{field:id}-{index}.docx");
+
+        assertEquals(1, failures.size());
+        assertEquals(1, failures.get(0).getIndex());
+        assertTrue(failures.get(0).getCause() instanceof MissingTemplateVariableException);
+        assertTrue(new File(tempDir, "out/a-0.docx").exists());
+        assertFalse(new File(tempDir, "out/b-1.docx").exists());
+        assertTrue(new File(tempDir, "out/c-2.docx").exists());
+    }
+
+    @Test
+    public void validationTest() throws IOException {
+        // setup
+        byte[] docx = TestDocuments.docx(doc -> doc.createParagraph().createRun().setText("${first:?} ${second:?}"));
+        CompiledTemplate template = CompiledTemplate.compile(new ByteArrayInputStream(docx));
+        BatchRenderer renderer = new BatchRenderer(template, Map.of(), false);
+
+        // action
+        List<BatchRenderer.Failure> unvalidated = renderer.render(List.of(Map.<String, Object>of()).iterator(), tempDir.getPath() + "/{index}.docx");
+        renderer.setValidation(true);
+        List<BatchRenderer.Failure> validated = renderer.render(List.of(Map.<String, Object>of()).iterator(), tempDir.getPath() + "/{index}.docx");
+
+        // verify: off by default, a fill stops at the first missing variable; validated, all are reported
+        assertEquals(List.of("first"), ((MissingTemplateVariableException) unvalidated.get(0).getCause()).getMissingVariables());
+        assertEquals(List.of("first", "second"), ((MissingTemplateVariableException) validated.get(0).getCause()).getMissingVariables());
+    }
+
+    @Test
+    public void renderConcurrentlyTest() throws IOException {
+        CompiledTemplate template = CompiledTemplate.compile(new File("src/test/resources/test-input-with-error.docx"));
+        List<Map<String, Object>> records = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            records.add(i % 5 == 4 ? Map.of() : Map.of("name", "name " + i));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<BatchRenderer.Failure> failures = new BatchRenderer(template, Map.of(), false, executor, 8)
+                    .render(records.iterator(), tempDir.getPath() + "/{index}.docx");
+
+            assertEquals(List.of(4, 9, 14, 19), failures.stream().map(BatchRenderer.Failure::getIndex).collect(Collectors.toList()));
+            for (int i = 0; i < 20; i++) {
+                assertEquals(i % 5 != 4, new File(tempDir, i + ".docx").exists());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void malformedRecordTest() throws IOException {
+        CompiledTemplate template = CompiledTemplate.compile(new File("src/test/resources/test-input-with-error.docx"));
+        String records = "{\"id\":\"a\",\"name\":\"Andy\"}\n[\"not an object\"]\n{\"id\":\"c\",\"name\":\"Cathy\"}\n{\"id\":\n";
+
+        List<BatchRenderer.Failure> failures;
+        try (MappingIterator<Map<String, Object>> iterator = new ObjectMapper().readerFor(Map.class).readValues(records)) {
+            failures = new BatchRenderer(template, Map.of(), false)
+                    .render(iterator, tempDir.getPath() + "/out/{field:id}-{index}.docx");
+        }
+
+        // the record that is not an object is skipped, the batch stops at the truncated one
+        assertEquals(List.of(1, 3), failures.stream().map(BatchRenderer.Failure::getIndex).collect(Collectors.toList()));
+        assertTrue(failures.get(0).getCause() instanceof RuntimeJsonMappingException);
+        assertTrue(new File(tempDir, "out/a-0.docx").exists());
+        assertTrue(new File(tempDir, "out/c-2.docx").exists());
+    }
+
+    @Test
+    public void resolveOutputNameTest() {
+        assertEquals("out/7.docx", BatchRenderer.resolveOutputName("out/{index}.docx", 7, Map.of()));
+        assertEquals("out/x1_$2.docx", BatchRenderer.resolveOutputName("out/{field:id}_{field:code}.docx", 0, Map.of("id", "x1", "code", "$2")));
+        assertThrows(IllegalArgumentException.class, () -> BatchRenderer.resolveOutputName("{field:id}.docx", 0, Map.of()));
+    }
+}
@@ -0,0 +1,225 @@
+package document.word;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CompiledTemplateTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    public void placeholdersTest() throws IOException {
+        CompiledTemplate template = CompiledTemplate.compile(new File("src/test/resources/test-input.docx"));
+
+        List<String> names = template.getPlaceholders().stream().map(Placeholder::getName).collect(Collectors.toList());
+        assertTrue(names.containsAll(List.of("key[]", "values[]", "unmappedName", "contact", "title", "list", "description", "pageHeader", "pageFooter", "reference")));
+
+        Placeholder header = template.getPlaceholders().stream().filter(p -> p.getName().equals("pageHeader")).findFirst().get();
+        assertEquals("/word/header1.xml", header.getPartName());
+        assertNull(header.getModifier());
+
+        Placeholder title = template.getPlaceholders().stream().filter(p -> p.getName().equals("title")).findFirst().get();
+        assertEquals(":=Programmer", title.getModifier());
+    }
+
+    @Test
+    public void placeholderSplitAcrossRunsTest() throws IOException {
+        CompiledTemplate template = CompiledTemplate.compile(new ByteArrayInputStream(createDocument("Hello ${na", "me:-", "nobody}!")));
+        assertEquals(1, template.getPlaceholders().size());
+        assertEquals("name", template.getPlaceholders().get(0).getName());
+
+        File output = new File(tempDir, "output.docx");
+        new WordDocumentTemplateParser(template, Map.of("name", "Andy"), false).fill(output);
+        assertEquals("Hello Andy!", readFirstParagraph(output));
+
+        // the compiled template is not affected by previous fills
+        new WordDocumentTemplateParser(template, Map.of(), false).fill(output);
+        assertEquals("Hello nobody!", readFirstParagraph(output));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void copiedDocumentTest() throws Exception {
+        // setup
+        File source = new File("src/test/resources/test-input.docx");
+        Map<String, Object> variables = new ObjectMapper().readValue(new File("src/test/resources/test-variables.json"), Map.class);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new WordDocumentTemplateParser(source, variables, false).fill(expected);
+        CompiledTemplate template = CompiledTemplate.compile(source);
+
+        // action: concurrent fills, every one from a copy of the same parsed template
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<byte[]>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                    new WordDocumentTemplateParser(template, variables, false).fill(outputStream);
+                    return outputStream.toByteArray();
+                }));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // verify: the body, headers and footers fill the same as the template parsed from scratch
+        for (Future<byte[]> result : results) {
+            assertEquals(text(expected.toByteArray()), text(result.get()));
+        }
+    }
+
+    @Test
+    public void saveAndOpenTest() throws IOException {
+        // setup
+        File source = new File(tempDir, "template.docx");
+        Files.write(source.toPath(), createDocument("Hello ${na", "me:-", "nobody}! ${", "oops"));
+        Path artifact = CompiledTemplate.artifactOf(source.toPath());
+
+        // action
+        CompiledTemplate.compile(source).save(artifact);
+        CompiledTemplate template = CompiledTemplate.open(artifact);
+
+        // verify
+        assertEquals("template.docx" + CompiledTemplate.ARTIFACT_EXTENSION, artifact.getFileName().toString());
+        assertEquals(1, template.getPlaceholders().size());
+        assertEquals("name", template.getPlaceholders().get(0).getName());
+        assertEquals(":-nobody", template.getPlaceholders().get(0).getModifier());
+        assertEquals("paragraph 1", template.getPlaceholders().get(0).getLocation());
+        assertEquals(1, template.getAnalysis().getMalformed().size());
+        assertEquals("${oops in /word/document.xml, paragraph 1", template.getAnalysis().getMalformed().get(0).toString());
+        File output = new File(tempDir, "output.docx");
+        new WordDocumentTemplateParser(template, Map.of("name", "Andy"), false).fill(output);
+        assertEquals("Hello Andy! ${oops", readFirstParagraph(output));
+        new WordDocumentTemplateParser(template, Map.of(), false).fill(output);
+        assertEquals("Hello nobody! ${oops", readFirstParagraph(output));
+    }
+
+    @Test
+    public void concurrentSaveTest() throws Exception {
+        // setup
+        File source = new File(tempDir, "template.docx");
+        Files.write(source.toPath(), createDocument("Hello ${name}!"));
+        Path artifact = CompiledTemplate.artifactOf(source.toPath());
+        CompiledTemplate template = CompiledTemplate.compile(source);
+
+        // action: threads of the same process saving the same artifact
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(() -> {
+                    template.save(artifact);
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // verify: a complete artifact, readable by other users, and no temporary files left
+        assertEquals("name", CompiledTemplate.open(artifact).getPlaceholders().get(0).getName());
+        try (Stream<Path> files = Files.list(tempDir.toPath())) {
+            assertEquals(Set.of(source.toPath(), artifact), files.collect(Collectors.toSet()));
+        }
+        if (Files.getFileAttributeView(artifact, PosixFileAttributeView.class) != null) {
+            assertTrue(Files.getPosixFilePermissions(artifact).contains(PosixFilePermission.OTHERS_READ));
+        }
+    }
+
+    @Test
+    public void corruptArtifactTest() throws IOException {
+        // setup
+        File source = new File(tempDir, "template.docx");
+        Files.write(source.toPath(), createDocument("Hello ${name}!"));
+        Path artifact = CompiledTemplate.artifactOf(source.toPath());
+        CompiledTemplate.compile(source).save(artifact);
+        byte[] bytes = Files.readAllBytes(artifact);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(artifact, bytes);
+
+        // action & verify
+        IOException exception = assertThrows(IOException.class, () -> CompiledTemplate.open(artifact));
+        assertTrue(exception.getMessage().startsWith("Corrupt compiled template"), exception.getMessage());
+        Files.write(artifact, new byte[] {'P', 'K', 3, 4});
+        assertThrows(IOException.class, () -> CompiledTemplate.open(artifact));
+
+        // a broken artifact is ignored
+        assertEquals("name", CompiledTemplate.compileOrOpen(source).getPlaceholders().get(0).getName());
+    }
+
+    @Test
+    public void compileOrOpenTest() throws IOException {
+        // setup
+        File source = new File(tempDir, "template.docx");
+        Files.write(source.toPath(), createDocument("Hello ${name}!"));
+        CompiledTemplate.compile(source).save(CompiledTemplate.artifactOf(source.toPath()));
+
+        // action & verify: an up to date artifact is used
+        assertEquals("name", CompiledTemplate.compileOrOpen(source).getPlaceholders().get(0).getName());
+
+        // action & verify: once the template changes, the artifact is out of date and the template is compiled again
+        Files.write(source.toPath(), createDocument("Hello ${title}!"));
+        assertEquals("title", CompiledTemplate.compileOrOpen(source).getPlaceholders().get(0).getName());
+    }
+
+    private byte[] createDocument(String... runs) throws IOException {
+        return TestDocuments.docx(doc -> {
+            XWPFParagraph paragraph = doc.createParagraph();
+            for (String run : runs) {
+                paragraph.createRun().setText(run);
+            }
+        });
+    }
+
+    private String text(byte[] document) throws IOException {
+        StringBuilder result = new StringBuilder();
+        try (XWPFDocument doc = new XWPFDocument(new ByteArrayInputStream(document))) {
+            WordDocumentTemplateParser.forEachBody(doc, body -> {
+                for (XWPFParagraph paragraph : body.getParagraphs()) {
+                    result.append(paragraph.getText()).append('\n');
+                }
+                for (XWPFTable table : body.getTables()) {
+                    result.append(table.getText()).append('\n');
+                }
+            });
+        }
+        return result.toString();
+    }
+
+    private String readFirstParagraph(File file) throws IOException {
+        try (XWPFDocument doc = new XWPFDocument(new FileInputStream(file))) {
+            return doc.getParagraphArray(0).getText();
+        }
+    }
+}
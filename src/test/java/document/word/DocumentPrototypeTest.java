@@ -0,0 +1,132 @@
+package document.word;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.apache.poi.wp.usermodel.HeaderFooterType;
+import org.apache.poi.xwpf.model.XWPFHeaderFooterPolicy;
+import org.apache.poi.xwpf.usermodel.IBodyElement;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFFooter;
+import org.apache.poi.xwpf.usermodel.XWPFFootnote;
+import org.apache.poi.xwpf.usermodel.XWPFHeader;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFSDT;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.junit.jupiter.api.Test;
+import org.openxmlformats.schemas.wordprocessingml.x2006.main.CTSdtBlock;
+
+public class DocumentPrototypeTest {
+
+    @Test
+    public void sameAsLoadedDocumentTest() throws IOException {
+        // setup
+        byte[] template = template();
+        DocumentPrototype prototype = new DocumentPrototype(new XWPFDocument(new ByteArrayInputStream(template)), template);
+
+        // action
+        try (XWPFDocument loaded = new XWPFDocument(new ByteArrayInputStream(template)); XWPFDocument copy = prototype.newDocument()) {
+
+            // verify: the body, headers, footers and footnotes read the same, and are written the same
+            assertEquals(describe(loaded), describe(copy));
+            assertEquals(parts(write(loaded)), parts(write(copy)));
+        }
+    }
+
+    @Test
+    public void independentCopiesTest() throws IOException {
+        // setup
+        byte[] template = template();
+        DocumentPrototype prototype = new DocumentPrototype(new XWPFDocument(new ByteArrayInputStream(template)), template);
+
+        // action: change a copy everywhere the prototype copies the xml
+        try (XWPFDocument changed = prototype.newDocument()) {
+            changed.getParagraphs().get(0).getRuns().get(0).setText("changed", 0);
+            changed.getTables().get(0).getRow(0).getCell(0).getParagraphs().get(0).getRuns().get(0).setText("changed", 0);
+            changed.getHeaderList().get(0).getParagraphs().get(0).getRuns().get(0).setText("changed", 0);
+            changed.getFooterList().get(0).getParagraphs().get(0).getRuns().get(0).setText("changed", 0);
+
+            // verify: the next copy is not affected
+            try (XWPFDocument loaded = new XWPFDocument(new ByteArrayInputStream(template)); XWPFDocument copy = prototype.newDocument()) {
+                assertEquals(describe(loaded), describe(copy));
+            }
+        }
+    }
+
+    private List<String> describe(XWPFDocument doc) {
+        List<String> result = new ArrayList<>();
+        for (IBodyElement element : doc.getBodyElements()) {
+            if (element instanceof XWPFParagraph paragraph) {
+                result.add("paragraph: " + paragraph.getText());
+            } else if (element instanceof XWPFTable table) {
+                result.add("table: " + table.getText());
+            } else if (element instanceof XWPFSDT contentControl) {
+                result.add("content control: " + contentControl.getContent().getText());
+            }
+        }
+        result.add("paragraphs: " + doc.getParagraphs().size() + ", tables: " + doc.getTables().size());
+        for (XWPFHeader header : doc.getHeaderList()) {
+            result.add(header.getPackagePart().getPartName().getName() + ": " + header.getText());
+        }
+        for (XWPFFooter footer : doc.getFooterList()) {
+            result.add(footer.getPackagePart().getPartName().getName() + ": " + footer.getText() + ", tables: " + footer.getTables().size());
+        }
+        XWPFHeaderFooterPolicy policy = doc.getHeaderFooterPolicy();
+        result.add("default header: " + policy.getDefaultHeader().getText());
+        result.add("first page header: " + policy.getFirstPageHeader().getText());
+        result.add("default footer: " + policy.getDefaultFooter().getText());
+        for (XWPFFootnote footnote : doc.getFootnotes()) {
+            result.add("footnote " + footnote.getId() + ": " + footnote.getParagraphs().stream().map(XWPFParagraph::getText).toList());
+        }
+        return result;
+    }
+
+    private byte[] write(XWPFDocument doc) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        doc.write(outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private Map<String, String> parts(byte[] docx) throws IOException {
+        Map<String, String> result = new TreeMap<>();
+        try (ZipFile zipFile = new ZipFile(new SeekableInMemoryByteChannel(docx))) {
+            for (ZipArchiveEntry entry : Collections.list(zipFile.getEntries())) {
+                result.put(entry.getName(), new String(zipFile.getInputStream(entry).readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return result;
+    }
+
+    private byte[] template() throws IOException {
+        return TestDocuments.docx(doc -> {
+            doc.createParagraph().createRun().setText("Dear ${name}");
+            XWPFTable table = doc.createTable(2, 2);
+            table.getRow(0).getCell(0).setText("${item[]}");
+            table.getRow(0).getCell(1).setText("${price[]}");
+            CTSdtBlock contentControl = doc.getDocument().getBody().addNewSdt();
+            contentControl.addNewSdtPr().addNewAlias().setVal("signature");
+            contentControl.addNewSdtContent().addNewP().addNewR().addNewT().setStringValue("Signed ${signer}");
+            XWPFParagraph last = doc.createParagraph();
+            last.createRun().setText("See the note");
+            XWPFFootnote footnote = doc.createFootnote();
+            footnote.createParagraph().createRun().setText("Note on ${name}");
+            last.addFootnoteReference(footnote);
+            doc.createHeader(HeaderFooterType.DEFAULT).createParagraph().createRun().setText("Header ${title}");
+            doc.createHeader(HeaderFooterType.FIRST).createParagraph().createRun().setText("First page ${title}");
+            XWPFFooter footer = doc.createFooter(HeaderFooterType.DEFAULT);
+            footer.createParagraph().createRun().setText("Footer ${page}");
+            footer.createTable(1, 1).getRow(0).getCell(0).setText("${footnote}");
+        });
+    }
+}
@@ -0,0 +1,84 @@
+package document.word;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import org.junit.jupiter.api.Test;
+
+public class PlaceholderScannerUTest {
+
+    @Test
+    public void scanTest() {
+        List<PlaceholderToken> tokens = PlaceholderScanner.scan("Hi ${name}, ${rows[]:-[\"a\",\"b\"]} ${title:=none} ${$}");
+
+        assertEquals(4, tokens.size());
+        assertEquals("name", tokens.get(0).name());
+        assertNull(tokens.get(0).modifier());
+        assertEquals(3, tokens.get(0).start());
+        assertEquals(10, tokens.get(0).end());
+        assertEquals("rows[]", tokens.get(1).name());
+        assertEquals(":-[\"a\",\"b\"]", tokens.get(1).modifier());
+        assertEquals("title", tokens.get(2).name());
+        assertTrue(tokens.get(2).hasModifier('='));
+        assertEquals("${title:=none}", tokens.get(2).text());
+        assertEquals("$", tokens.get(3).name());
+    }
+
+    @Test
+    public void scanWithoutPlaceholderTest() {
+        assertTrue(PlaceholderScanner.scan("no template variables, just $ and { and }").isEmpty());
+    }
+
+    @Test
+    public void findMalformedTest() {
+        assertEquals(List.of(0, 20, 23), PlaceholderScanner.findMalformed("${first name} ${ok} ${ ${unclosed"));
+        assertEquals(List.of(), PlaceholderScanner.findMalformed("${a:-${b} ${c}"));
+    }
+
+    @Test
+    public void excerptTest() {
+        String text = "${first name} ${ok} ${ ${unclosed\nnext line ${a:+b}";
+        List<String> excerpts = new ArrayList<>();
+        for (int offset : PlaceholderScanner.findMalformed(text)) {
+            excerpts.add(PlaceholderScanner.excerpt(text, offset));
+        }
+
+        assertEquals(List.of("${first name}", "${", "${unclosed", "${a:+b}"), excerpts);
+        assertEquals("${" + "x".repeat(38), PlaceholderScanner.excerpt("${" + "x".repeat(100), 0));
+    }
+
+    @Test
+    public void sameMatchesAsPatternTest() {
+        String[] fragments = { "$", "{", "}", "${", "a", "Z", "9", ".", "_", "-", "[", "]", "[]", ":", ":-", ":=", ":?", ":+", " ", "\n", "\r", "\u2028", "\u0085", "x" };
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = random.nextInt(30); j >= 0; j--) {
+                text.append(fragments[random.nextInt(fragments.length)]);
+            }
+            assertEquals(patternMatches(text.toString()), scannerMatches(text.toString()), text.toString());
+        }
+    }
+
+    private static List<String> patternMatches(String text) {
+        List<String> result = new ArrayList<>();
+        Matcher matcher = PlaceholderScanner.PATTERN.matcher(text);
+        while (matcher.find()) {
+            result.add(matcher.start() + "-" + matcher.end() + " " + matcher.group(1) + " " + matcher.group(2));
+        }
+        return result;
+    }
+
+    private static List<String> scannerMatches(String text) {
+        List<String> result = new ArrayList<>();
+        for (PlaceholderToken token : PlaceholderScanner.scan(text)) {
+            result.add(token.start() + "-" + token.end() + " " + token.name() + " " + token.modifier());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,330 @@
+package document.word;
+
+import document.word.variable.LazyList;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RenderCacheTest {
+
+    private static final File TEMPLATE = new File("src/test/resources/test-input.docx");
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    public void fillFromCacheTest() throws IOException {
+        // setup
+        RenderCache cache = RenderCache.inMemory(1 << 24);
+        Map<String, Object> variables = variables();
+
+        // action
+        byte[] first = fill(cache, variables);
+        byte[] second = fill(cache, variables);
+        variables.put("reference", "another reference value");
+        byte[] third = fill(cache, variables);
+
+        // verify: the same variables give the cached document, other values a new one
+        assertArrayEquals(first, second);
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(first.length + third.length, cache.getSizeBytes());
+    }
+
+    @Test
+    public void variableSourceTest() throws IOException {
+        // setup
+        RenderCache cache = RenderCache.inMemory(1 << 24);
+        Map<String, Object> variables = variables();
+        variables.remove("reference");
+        Map<String, Object> source = new HashMap<>(Map.of("reference", "from a source"));
+
+        // action
+        for (int i = 0; i < 2; i++) {
+            WordDocumentTemplateParser parser = new WordDocumentTemplateParser(TEMPLATE, variables, false);
+            parser.addVariableSource(source::get);
+            parser.setRenderCache(cache);
+            parser.fill(new ByteArrayOutputStream());
+            source.put("reference", "changed in the source");
+        }
+
+        // verify: values from variable sources are part of the key too
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void lazyListTest() throws IOException {
+        // setup
+        RenderCache cache = RenderCache.inMemory(1 << 24);
+        Map<String, Object> variables = variables();
+        List<Object> keys = new ArrayList<>((List<?>) variables.get("key[]"));
+        variables.put("key[]", (LazyList) () -> new LazyList.Cursor() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < keys.size();
+            }
+
+            @Override
+            public Object next() {
+                return keys.get(index++);
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        // action
+        byte[] first = fill(cache, variables);
+        byte[] second = fill(cache, variables);
+        keys.add("some test key 4");
+        fill(cache, variables);
+
+        // verify: the elements are part of the key
+        assertArrayEquals(first, second);
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void objectValueNotCachedTest() throws IOException {
+        // setup
+        RenderCache cache = RenderCache.inMemory(1 << 24);
+        Map<String, Object> variables = variables();
+        variables.put("reference", new Object() {
+            @Override
+            public String toString() {
+                return "some reference value";
+            }
+        });
+
+        // action
+        fill(cache, variables);
+
+        // verify: the text of an object need not tell its content apart
+        assertEquals(0, cache.getHits() + cache.getMisses());
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void renderedFormTest() throws IOException {
+        // setup
+        RenderCache cache = RenderCache.inMemory(1 << 24);
+        Map<String, Object> variables = variables();
+
+        // action
+        variables.put("reference", 12);
+        byte[] first = fill(cache, variables);
+        variables.put("reference", "12");
+        byte[] second = fill(cache, variables);
+
+        // verify: values that render the same share the document
+        assertArrayEquals(first, second);
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void templateChangeTest() throws IOException {
+        // setup
+        RenderCache cache = RenderCache.onDisk(new File(tempDir, "cache").toPath(), 1 << 24);
+        File template = new File(tempDir, "template.docx");
+        Files.copy(TEMPLATE.toPath(), template.toPath());
+        Map<String, Object> variables = variables();
+        variables.put("name", "Andy");
+        WordDocumentTemplateParser parser = new WordDocumentTemplateParser(template, variables, false);
+        parser.setRenderCache(cache);
+
+        // action
+        parser.fill(new ByteArrayOutputStream());
+        parser.fill(new ByteArrayOutputStream());
+        Files.copy(new File("src/test/resources/test-input-with-error.docx").toPath(), template.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        template.setLastModified(template.lastModified() + 2000);
+        parser.fill(new ByteArrayOutputStream());
+
+        // verify
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void templateEditTest() throws IOException {
+        // setup
+        RenderCache cache = RenderCache.inMemory(1 << 24);
+        File template = new File(tempDir, "template.docx");
+        writeTemplate(template, "Hello ${name}");
+        Map<String, Object> source = new HashMap<>(Map.of("place", "home"));
+        WordDocumentTemplateParser parser = new WordDocumentTemplateParser(template, Map.of("name", "Andy"), false);
+        parser.addVariableSource(source::get);
+        parser.setRenderCache(cache);
+        parser.fill(new ByteArrayOutputStream());
+
+        // action: the edited template uses another variable, which is part of the key from then on
+        writeTemplate(template, "Hello ${name} at ${place}");
+        template.setLastModified(template.lastModified() + 2000);
+        String first = fillText(parser);
+        source.put("place", "work");
+        String second = fillText(parser);
+
+        // verify
+        assertEquals("Hello Andy at home", first);
+        assertEquals("Hello Andy at work", second);
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void fillChannelTest() throws IOException {
+        // setup
+        RenderCache cache = RenderCache.onDisk(new File(tempDir, "cache").toPath(), 1 << 24);
+        Map<String, Object> variables = variables();
+        byte[] expected = fill(cache, variables);
+
+        // action
+        Path output = tempDir.toPath().resolve("output.docx");
+        try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            WordDocumentTemplateParser parser = new WordDocumentTemplateParser(TEMPLATE, variables, false);
+            parser.setRenderCache(cache);
+            parser.fill(channel);
+        }
+
+        // verify
+        assertEquals(1, cache.getHits());
+        assertArrayEquals(expected, Files.readAllBytes(output));
+    }
+
+    @Test
+    public void staleTemporaryFilesTest() throws IOException {
+        // setup
+        Path directory = tempDir.toPath().resolve("cache");
+        Files.createDirectories(directory);
+        Path stale = Files.write(directory.resolve("key1234.tmp"), new byte[10]);
+        Files.setLastModifiedTime(stale, FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+        Path fresh = Files.write(directory.resolve("key5678.tmp"), new byte[10]);
+
+        // action
+        RenderCache.onDisk(directory, 1 << 10);
+
+        // verify: a temporary file still being written by another process is kept
+        assertFalse(Files.exists(stale));
+        assertTrue(Files.exists(fresh));
+    }
+
+    @Test
+    public void evictionTest() throws IOException {
+        // setup
+        RenderCache cache = RenderCache.inMemory(25);
+
+        // action
+        cache.put("a", new byte[10]);
+        cache.put("b", new byte[10]);
+        cache.get("a").close();
+        cache.put("c", new byte[10]);
+        cache.put("d", new byte[30]);
+
+        // verify: the least recently used document is evicted, one larger than the cache is not kept
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertNull(cache.get("d"));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(20, cache.getSizeBytes());
+        assertThrows(IllegalArgumentException.class, () -> RenderCache.inMemory(0));
+    }
+
+    @Test
+    public void diskCacheTest() throws IOException {
+        // setup
+        File directory = new File(tempDir, "cache");
+        Map<String, Object> variables = variables();
+        byte[] expected = fill(RenderCache.onDisk(directory.toPath(), 1 << 24), variables);
+
+        // action: a new cache on the same directory, e.g. after a restart
+        RenderCache cache = RenderCache.onDisk(directory.toPath(), 1 << 24);
+        File output = new File(tempDir, "output.docx");
+        WordDocumentTemplateParser parser = new WordDocumentTemplateParser(TEMPLATE, variables, false);
+        parser.setRenderCache(cache);
+        parser.fill(output);
+
+        // verify
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getEntryCount());
+        assertArrayEquals(expected, Files.readAllBytes(output.toPath()));
+        assertEquals(0, RenderCache.onDisk(directory.toPath(), 1).getEntryCount());
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void transferToTest() throws IOException {
+        // setup
+        RenderCache cache = RenderCache.onDisk(new File(tempDir, "cache").toPath(), 1 << 10);
+        byte[] document = "some document".getBytes();
+        cache.put("key", document);
+
+        // action
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (RenderCache.Hit hit = cache.get("key")) {
+            hit.transferTo(outputStream);
+        }
+
+        // verify
+        assertArrayEquals(document, outputStream.toByteArray());
+    }
+
+    private void writeTemplate(File file, String text) throws IOException {
+        try (XWPFDocument doc = new XWPFDocument(); FileOutputStream outputStream = new FileOutputStream(file)) {
+            doc.createParagraph().createRun().setText(text);
+            doc.write(outputStream);
+        }
+    }
+
+    private String fillText(WordDocumentTemplateParser parser) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        parser.fill(outputStream);
+        try (XWPFDocument doc = new XWPFDocument(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            return doc.getParagraphArray(0).getText();
+        }
+    }
+
+    private byte[] fill(RenderCache cache, Map<String, Object> variables) throws IOException {
+        WordDocumentTemplateParser parser = new WordDocumentTemplateParser(TEMPLATE, variables, false);
+        parser.setRenderCache(cache);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        parser.fill(outputStream);
+        return outputStream.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> variables() throws IOException {
+        return new ObjectMapper().readValue(new File("src/test/resources/test-variables.json"), Map.class);
+    }
+}
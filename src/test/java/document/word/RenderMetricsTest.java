@@ -0,0 +1,149 @@
+package document.word;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import document.word.RenderListener.Counter;
+import document.word.RenderListener.Phase;
+import document.word.exception.MissingTemplateVariableException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import org.apache.poi.wp.usermodel.HeaderFooterType;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.junit.jupiter.api.Test;
+
+public class RenderMetricsTest {
+
+    @Test
+    public void countersAndPhasesTest() throws IOException {
+        // setup
+        RenderMetrics metrics = new RenderMetrics();
+        Map<String, Object> variables = Map.of("name", "Pet Store", "pets", List.of("cat", "dog", "bird"), "rows[]", List.of("a", "b", "c"));
+        WordDocumentTemplateParser parser = new WordDocumentTemplateParser(template(), variables, false);
+        parser.addVariableSource(name -> name.equals("footer") ? "page" : null);
+        parser.setRenderListener("pets.docx", metrics);
+
+        // action
+        parser.fill(new ByteArrayOutputStream());
+
+        // verify
+        assertEquals(8, metrics.getCount(Counter.PLACEHOLDERS_RESOLVED));
+        assertEquals(1, metrics.getCount(Counter.RUNS_MERGED));
+        assertEquals(2, metrics.getCount(Counter.ROWS_GENERATED));
+        assertEquals(2, metrics.getCount(Counter.PARAGRAPHS_INSERTED));
+        assertEquals(1, metrics.getCount(Counter.FALLBACKS_USED));
+        assertEquals(1, metrics.getCount(Counter.DEFAULTS_USED));
+        for (Phase phase : List.of(Phase.LOAD, Phase.BODY, Phase.FOOTERS, Phase.ROW_EXPANSION, Phase.WRITE)) {
+            assertTrue(metrics.getPhaseNanos(phase) > 0, phase.name());
+        }
+        assertEquals(0, metrics.getPhaseNanos(Phase.HEADERS));
+
+        RenderMetrics.Latency latency = metrics.getLatency("pets.docx");
+        assertEquals(1, latency.getCount());
+        assertEquals(0, latency.getFailures());
+        assertTrue(latency.getTotalNanos() > 0);
+    }
+
+    @Test
+    public void streamingTest() throws IOException {
+        // setup
+        RenderMetrics metrics = new RenderMetrics();
+        Map<String, Object> variables = Map.of("name", "Pet Store", "pets", List.of("cat", "dog", "bird"), "rows[]", List.of("a", "b", "c"));
+        StreamingWordDocumentTemplateParser parser = new StreamingWordDocumentTemplateParser(template(), variables, false);
+        parser.addVariableSource(name -> name.equals("footer") ? "page" : null);
+        parser.setRenderListener("pets.docx", metrics);
+
+        // action
+        parser.fill(new ByteArrayOutputStream());
+
+        // verify
+        assertEquals(8, metrics.getCount(Counter.PLACEHOLDERS_RESOLVED));
+        assertEquals(1, metrics.getCount(Counter.RUNS_MERGED));
+        assertEquals(2, metrics.getCount(Counter.ROWS_GENERATED));
+        assertEquals(2, metrics.getCount(Counter.PARAGRAPHS_INSERTED));
+        assertEquals(1, metrics.getCount(Counter.FALLBACKS_USED));
+        assertEquals(1, metrics.getCount(Counter.DEFAULTS_USED));
+        for (Phase phase : List.of(Phase.BODY, Phase.FOOTERS, Phase.ROW_EXPANSION, Phase.WRITE)) {
+            assertTrue(metrics.getPhaseNanos(phase) > 0, phase.name());
+        }
+        assertEquals(0, metrics.getPhaseNanos(Phase.LOAD));
+        assertEquals(1, metrics.getLatency("pets.docx").getCount());
+    }
+
+    @Test
+    public void perTemplateTest() throws IOException {
+        // setup
+        RenderMetrics metrics = new RenderMetrics();
+        Map<String, Object> variables = Map.of("name", "Pet Store", "pets", List.of("cat", "dog", "bird"), "rows[]", List.of("a", "b", "c"));
+        WordDocumentTemplateParser pets = new WordDocumentTemplateParser(template(), variables, false);
+        pets.addVariableSource(name -> name.equals("footer") ? "page" : null);
+        pets.setRenderListener("pets.docx", metrics);
+        WordDocumentTemplateParser invalid = new WordDocumentTemplateParser(template(), Map.of(), false);
+        invalid.setRenderListener("invalid.docx", metrics);
+
+        // action
+        pets.fill(new ByteArrayOutputStream());
+        assertThrows(MissingTemplateVariableException.class, () -> invalid.fill(new ByteArrayOutputStream()));
+
+        // verify
+        assertEquals(2, metrics.getCount("pets.docx", Counter.ROWS_GENERATED));
+        assertEquals(0, metrics.getCount("invalid.docx", Counter.ROWS_GENERATED));
+        assertEquals(0, metrics.getCount("unknown.docx", Counter.ROWS_GENERATED));
+        assertTrue(metrics.getPhaseNanos("pets.docx", Phase.WRITE) > 0);
+        assertEquals(0, metrics.getPhaseNanos("invalid.docx", Phase.WRITE));
+        assertTrue(metrics.getPhaseNanos("invalid.docx", Phase.LOAD) > 0);
+
+        Map<?, ?> templates = (Map<?, ?>) metrics.toMap().get("templates");
+        Map<?, ?> counters = (Map<?, ?>) ((Map<?, ?>) templates.get("pets.docx")).get("counters");
+        assertEquals(2L, counters.get("ROWS_GENERATED"));
+        assertEquals(1L, ((Map<?, ?>) templates.get("invalid.docx")).get("failures"));
+    }
+
+    @Test
+    public void failedFillTest() throws IOException {
+        // setup
+        RenderMetrics metrics = new RenderMetrics();
+        WordDocumentTemplateParser parser = new WordDocumentTemplateParser(template(), Map.of(), false);
+        parser.setRenderListener("pets.docx", metrics);
+
+        // action
+        assertThrows(MissingTemplateVariableException.class, () -> parser.fill(new ByteArrayOutputStream()));
+
+        // verify
+        assertEquals(1, metrics.getLatency("pets.docx").getFailures());
+        assertEquals(0, metrics.getPhaseNanos(Phase.WRITE));
+    }
+
+    @Test
+    public void percentileTest() {
+        // setup
+        RenderMetrics metrics = new RenderMetrics();
+
+        // action
+        for (int i = 0; i < 99; i++) {
+            metrics.fillCompleted("a", 3_000_000, true);
+        }
+        metrics.fillCompleted("a", 60_000_000_000L, true);
+
+        // verify
+        RenderMetrics.Latency latency = metrics.getLatency("a");
+        assertEquals(5, latency.getPercentileMillis(0.5));
+        assertEquals(5, latency.getPercentileMillis(0.99));
+        assertEquals(60_000, latency.getPercentileMillis(1));
+    }
+
+    private byte[] template() throws IOException {
+        return TestDocuments.docx(doc -> {
+            XWPFParagraph paragraph = doc.createParagraph();
+            paragraph.createRun().setText("${na");
+            paragraph.createRun().setText("me:?name is required}");
+            doc.createParagraph().createRun().setText("${pets} ${missing:-none}");
+            doc.createTable(1, 1).getRow(0).getCell(0).setText("${rows[]}");
+            doc.createFooter(HeaderFooterType.DEFAULT).createParagraph().createRun().setText("${footer}");
+        });
+    }
+}
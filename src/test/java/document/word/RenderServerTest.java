@@ -0,0 +1,193 @@
+package document.word;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.Map;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RenderServerTest {
+
+    @TempDir
+    File tempDir;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private RenderServer server;
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        File templateDir = new File(tempDir, "templates");
+        templateDir.mkdir();
+        try (XWPFDocument doc = new XWPFDocument(); FileOutputStream outputStream = new FileOutputStream(new File(templateDir, "hello.docx"))) {
+            doc.createParagraph().createRun().setText("Hello ${name:?name is required} from ${place}");
+            doc.write(outputStream);
+        }
+        try (XWPFDocument doc = new XWPFDocument(); FileOutputStream outputStream = new FileOutputStream(new File(tempDir, "outside.docx"))) {
+            doc.write(outputStream);
+        }
+
+        server = new RenderServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), templateDir, Map.of("place", "server"), false, 2, 1000);
+        server.addVariableSource(name -> {
+            if (name.equals("slow")) {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return null;
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void renderTest() throws IOException, InterruptedException {
+        // action
+        HttpResponse<byte[]> response = render("hello.docx", "{\"name\":\"Andy\"}");
+
+        // verify
+        assertEquals(200, response.statusCode());
+        assertEquals("application/vnd.openxmlformats-officedocument.wordprocessingml.document", response.headers().firstValue("Content-Type").orElse(null));
+        try (XWPFDocument doc = new XWPFDocument(new ByteArrayInputStream(response.body()))) {
+            assertEquals("Hello Andy from server", doc.getParagraphs().get(0).getText());
+        }
+    }
+
+    @Test
+    public void healthTest() throws IOException, InterruptedException {
+        // setup
+        render("hello.docx", "{\"name\":\"Andy\"}");
+
+        // action
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri("/health")).build(), HttpResponse.BodyHandlers.ofString());
+
+        // verify
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("\"status\":\"UP\""));
+        assertTrue(response.body().contains("\"cachedTemplates\":1"));
+    }
+
+    @Test
+    public void metricsTest() throws IOException, InterruptedException {
+        // setup
+        render("hello.docx", "{\"name\":\"Andy\"}");
+
+        // action
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri("/metrics")).build(), HttpResponse.BodyHandlers.ofString());
+
+        // verify
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("\"PLACEHOLDERS_RESOLVED\":2"));
+        assertEquals(1, server.getMetrics().getLatency("hello.docx").getCount());
+    }
+
+    @Test
+    public void errorTest() throws IOException, InterruptedException {
+        assertEquals(404, render("missing.docx", "{}").statusCode());
+        assertEquals(404, render("../outside.docx", "{}").statusCode());
+        assertEquals(400, render("hello.docx", "{\"name\":").statusCode());
+
+        HttpResponse<byte[]> response = render("hello.docx", "{}");
+        assertEquals(422, response.statusCode());
+        assertEquals("Missing template variable: name (name is required)", new String(response.body()));
+    }
+
+    @Test
+    public void requestTooLargeTest() throws IOException, InterruptedException {
+        // setup
+        server.setMaxRequestBytes(100);
+
+        // action
+        HttpResponse<byte[]> tooLarge = render("hello.docx", "{\"name\":\"" + "x".repeat(200) + "\"}");
+        HttpResponse<byte[]> small = render("hello.docx", "{\"name\":\"Andy\"}");
+
+        // verify
+        assertEquals(413, tooLarge.statusCode());
+        assertEquals("Request body larger than 100 bytes", new String(tooLarge.body()));
+        assertEquals(200, small.statusCode());
+        assertThrows(IllegalArgumentException.class, () -> server.setMaxRequestBytes(0));
+    }
+
+    @Test
+    public void brokenTemplateTest() throws IOException, InterruptedException {
+        // setup: a template that only fails once it is compiled
+        Files.write(new File(tempDir, "templates/broken.docx").toPath(), new byte[] {'P', 'K', 3, 4});
+
+        // action
+        HttpResponse<byte[]> response = render("broken.docx", "{}");
+
+        // verify: compiling runs on a worker, whose failure is answered like that of any render
+        assertEquals(500, response.statusCode());
+        assertTrue(new String(response.body()).startsWith("Render failed"));
+    }
+
+    @Test
+    public void variablesTest() throws IOException, InterruptedException {
+        // action
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri("/variables?template=hello.docx")).build(), HttpResponse.BodyHandlers.ofString());
+
+        // verify
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("\"name\":\"name\""));
+        assertTrue(response.body().contains("\"required\":true"));
+        assertTrue(response.body().contains("\"location\":\"paragraph 1\""));
+    }
+
+    @Test
+    public void brokenTemplateVariablesTest() throws IOException, InterruptedException {
+        // setup
+        Files.write(new File(tempDir, "templates/broken.docx").toPath(), new byte[] {'P', 'K', 3, 4});
+
+        // action
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri("/variables?template=broken.docx")).build(), HttpResponse.BodyHandlers.ofString());
+
+        // verify: compiled on a worker as well, whose failure is answered
+        assertEquals(500, response.statusCode());
+        assertTrue(response.body().startsWith("Could not read template"));
+    }
+
+    @Test
+    public void timeoutTest() throws IOException, InterruptedException {
+        // setup
+        File template = new File(tempDir, "templates/slow.docx");
+        try (XWPFDocument doc = new XWPFDocument(); FileOutputStream outputStream = new FileOutputStream(template)) {
+            doc.createParagraph().createRun().setText("${slow:-fast}");
+            doc.write(outputStream);
+        }
+
+        // action & verify
+        assertEquals(504, render("slow.docx", "{}").statusCode());
+    }
+
+    private HttpResponse<byte[]> render(String template, String variables) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri("/render?template=" + template))
+                .POST(HttpRequest.BodyPublishers.ofString(variables))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getPort() + path);
+    }
+}
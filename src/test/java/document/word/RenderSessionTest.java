@@ -0,0 +1,118 @@
+package document.word;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import document.word.exception.MissingTemplateVariableException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.poi.wp.usermodel.HeaderFooterType;
+import org.apache.poi.xwpf.usermodel.IBody;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import org.junit.jupiter.api.Test;
+
+public class RenderSessionTest {
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void sameOutputAsStreamingParserTest() throws IOException {
+        // setup
+        File wordFile = new File("src/test/resources/test-input.docx");
+        Map<String, Object> variables = new ObjectMapper().readValue(new File("src/test/resources/test-variables.json"), Map.class);
+        RenderSession session = new RenderSession(wordFile, variables, true);
+
+        // action
+        Map<String, Object> changes = Map.of("pageHeader", "another header value", "key[]", List.of("key A", "key B"));
+        session.update(changes);
+
+        // verify
+        assertEquals(Set.of("word/document.xml", "word/header1.xml"), session.getLastRenderedParts());
+        Map<String, Object> updatedVariables = new HashMap<>(variables);
+        updatedVariables.putAll(changes);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new StreamingWordDocumentTemplateParser(wordFile, updatedVariables, true).fill(expected);
+        assertEquals(allText(expected.toByteArray()), allText(fill(session)));
+    }
+
+    @Test
+    public void onlyChangedPartsRenderedTest() throws IOException {
+        // setup
+        RenderSession session = new RenderSession(template(), Map.of("name", "Pet Store", "footer", "page"), false);
+
+        // action & verify
+        session.update(Map.of("footer", "page 1"));
+        assertEquals(Set.of("word/footer1.xml"), session.getLastRenderedParts());
+        session.update(Map.of("footer", "page 1"));
+        assertEquals(Set.of(), session.getLastRenderedParts());
+        session.update(Map.of("name", "Zoo"));
+        assertEquals(Set.of("word/document.xml"), session.getLastRenderedParts());
+        assertEquals(List.of("Title: none", "Zoo none", "Row a of Zoo", "page 1"), allText(fill(session)));
+    }
+
+    @Test
+    public void failedUpdateLeavesSessionUnchangedTest() throws IOException {
+        // setup
+        RenderSession session = new RenderSession(template(), Map.of("name", "Pet Store", "footer", "page"), false);
+
+        // action
+        Map<String, Object> changes = new HashMap<>();
+        changes.put("name", null);
+        MissingTemplateVariableException exception = assertThrows(MissingTemplateVariableException.class, () -> session.update(changes));
+
+        // verify
+        assertEquals("Missing template variable: name (name is required)", exception.getMessage());
+        assertEquals(List.of("Title: none", "Pet Store none", "Row a of Pet Store", "page"), allText(fill(session)));
+    }
+
+    /*
+     * The second paragraph uses the ":=" assignment of the first one, which is not rendered again when only name changes.
+     */
+    private byte[] template() throws IOException {
+        return TestDocuments.docx(doc -> {
+            doc.createParagraph().createRun().setText("Title: ${title:=none}");
+            doc.createParagraph().createRun().setText("${name:?name is required} ${title}");
+            doc.createTable(1, 1).getRow(0).getCell(0).setText("Row ${rows[]:-[\"a\"]} of ${name}");
+            doc.createFooter(HeaderFooterType.DEFAULT).createParagraph().createRun().setText("${footer}");
+        });
+    }
+
+    private byte[] fill(RenderSession session) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        session.fill(outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private List<String> allText(byte[] document) throws IOException {
+        try (XWPFDocument doc = new XWPFDocument(new ByteArrayInputStream(document))) {
+            List<String> result = new ArrayList<>();
+            WordDocumentTemplateParser.forEachBody(doc, body -> collectText(body, result));
+            return result;
+        }
+    }
+
+    private void collectText(IBody body, List<String> result) {
+        for (XWPFParagraph paragraph : body.getParagraphs()) {
+            result.add(paragraph.getText());
+        }
+        for (XWPFTable table : body.getTables()) {
+            for (XWPFTableRow row : table.getRows()) {
+                for (XWPFTableCell cell : row.getTableCells()) {
+                    collectText(cell, result);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package document.word;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import document.word.exception.MissingTemplateVariableException;
+import document.word.variable.LazyList;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.apache.poi.wp.usermodel.HeaderFooterType;
+import org.apache.poi.xwpf.usermodel.IBody;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+import org.apache.poi.xwpf.usermodel.XWPFTableRow;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class StreamingWordDocumentTemplateParserTest {
+
+    @TempDir
+    File tempDir;
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void sameOutputAsXwpfParserTest() throws IOException {
+        // setup
+        File wordFile = new File("src/test/resources/test-input.docx");
+        Map<String, Object> variables = new ObjectMapper().readValue(new File("src/test/resources/test-variables.json"), Map.class);
+
+        // action
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new WordDocumentTemplateParser(wordFile, variables, true).fill(expected);
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        new StreamingWordDocumentTemplateParser(wordFile, variables, true).fill(actual);
+
+        // verify
+        try (XWPFDocument expectedDoc = new XWPFDocument(new ByteArrayInputStream(expected.toByteArray()));
+             XWPFDocument actualDoc = new XWPFDocument(new ByteArrayInputStream(actual.toByteArray()))) {
+            assertEquals(allText(expectedDoc), allText(actualDoc));
+            assertEquals(5, actualDoc.getTableArray(0).getRows().size());
+            assertEquals("Page Header: some header value", actualDoc.getHeaderList().get(0).getParagraphs().get(0).getText());
+        }
+    }
+
+    @Test
+    public void splitPlaceholdersListsAndRowsTest() throws IOException {
+        // setup
+        byte[] template = TestDocuments.docx(doc -> {
+            XWPFParagraph paragraph = doc.createParagraph();
+            paragraph.createRun().setText("Pets: ${pe");
+            paragraph.createRun().setText("ts} and ${descr");
+            paragraph.createRun().setText("iption}!");
+            XWPFTable table = doc.createTable(2, 1);
+            table.getRow(0).getCell(0).setText("Header");
+            table.getRow(1).getCell(0).setText("Row ${rows[]} of ${total}");
+            doc.createParagraph().createRun().setText("Title: ${title:=none}");
+        });
+        Map<String, Object> variables = Map.of("pets", List.of("cat", "dog", "bird"), "description", "line 1\nline 2", "rows[]", List.of("a", "b"), "total", 2);
+
+        // action
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new WordDocumentTemplateParser(template, variables, false).fill(expected);
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        new StreamingWordDocumentTemplateParser(template, variables, false).fill(actual);
+
+        // verify
+        try (XWPFDocument expectedDoc = new XWPFDocument(new ByteArrayInputStream(expected.toByteArray()));
+             XWPFDocument actualDoc = new XWPFDocument(new ByteArrayInputStream(actual.toByteArray()))) {
+            assertEquals(List.of("Pets: cat", "dog", "bird and line 1\nline 2!", "Title: none", "Header", "Row a of 2", "Row b of "), allText(actualDoc));
+            assertEquals(allText(expectedDoc), allText(actualDoc));
+        }
+    }
+
+    @Test
+    public void placeholderRightAfterListTest() throws IOException {
+        // setup
+        byte[] template = TestDocuments.docx(doc -> {
+            doc.createParagraph().createRun().setText("${pets}${suffix} ${pets}");
+        });
+        Map<String, Object> variables = Map.of("pets", List.of("cat", "dog"), "suffix", "!");
+
+        // action
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new WordDocumentTemplateParser(template, variables, false).fill(expected);
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        new StreamingWordDocumentTemplateParser(template, variables, false).fill(actual);
+
+        // verify
+        try (XWPFDocument expectedDoc = new XWPFDocument(new ByteArrayInputStream(expected.toByteArray()));
+             XWPFDocument actualDoc = new XWPFDocument(new ByteArrayInputStream(actual.toByteArray()))) {
+            assertEquals(List.of("cat", "dog! cat", "dog"), allText(expectedDoc));
+            assertEquals(allText(expectedDoc), allText(actualDoc));
+        }
+    }
+
+    @Test
+    public void assignmentInTableRowTest() throws IOException {
+        // setup
+        byte[] template = TestDocuments.docx(doc -> {
+            doc.createTable(1, 1).getRow(0).getCell(0).setText("Total: ${total:=42}");
+            doc.createParagraph().createRun().setText("After the table: ${total}");
+            doc.createTable(1, 1).getRow(0).getCell(0).setText("Second table: ${total}");
+            doc.createHeader(HeaderFooterType.DEFAULT).createParagraph().createRun().setText("Header: ${total}");
+        });
+
+        // action
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new WordDocumentTemplateParser(template, Map.of(), false).fill(expected);
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        new StreamingWordDocumentTemplateParser(template, Map.of(), false).fill(actual);
+        ByteArrayOutputStream session = new ByteArrayOutputStream();
+        new RenderSession(template, Map.of(), false).fill(session);
+
+        // verify: the paragraphs of a body are filled before its tables, later tables and parts see the assignment
+        try (XWPFDocument expectedDoc = new XWPFDocument(new ByteArrayInputStream(expected.toByteArray()));
+             XWPFDocument actualDoc = new XWPFDocument(new ByteArrayInputStream(actual.toByteArray()));
+             XWPFDocument sessionDoc = new XWPFDocument(new ByteArrayInputStream(session.toByteArray()))) {
+            assertEquals(List.of("After the table: ${total}", "Total: 42", "Second table: 42", "Header: 42"), allText(expectedDoc));
+            assertEquals(allText(expectedDoc), allText(actualDoc));
+            assertEquals(allText(expectedDoc), allText(sessionDoc));
+        }
+    }
+
+    @Test
+    public void lazyListRowsTest() throws IOException {
+        // setup
+        byte[] template = TestDocuments.docx(doc -> {
+            XWPFTable table = doc.createTable(2, 2);
+            table.getRow(0).getCell(0).setText("Item");
+            table.getRow(1).getCell(0).setText("${items[]}");
+            table.getRow(1).getCell(1).setText("${prices[]} of ${total}");
+            doc.createParagraph().createRun().setText("Last: ${items[]}");
+        });
+        int rows = 10_000;
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            lines.append("\"item ").append(i).append("\"\n");
+        }
+        Path itemsFile = tempDir.toPath().resolve("items.jsonl");
+        Files.writeString(itemsFile, lines);
+        Path pricesFile = tempDir.toPath().resolve("prices.csv");
+        Files.writeString(pricesFile, "price\n1\n2\n");
+        Map<String, Object> variables = Map.of("items[]", LazyList.jsonLines(itemsFile), "prices[]", LazyList.csvColumn(pricesFile, "price"), "total", 3);
+
+        // action
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        new StreamingWordDocumentTemplateParser(template, variables, false).fill(actual);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        new WordDocumentTemplateParser(template, variables, false).fill(expected);
+
+        // verify
+        try (XWPFDocument expectedDoc = new XWPFDocument(new ByteArrayInputStream(expected.toByteArray()));
+             XWPFDocument actualDoc = new XWPFDocument(new ByteArrayInputStream(actual.toByteArray()))) {
+            List<XWPFTableRow> tableRows = actualDoc.getTableArray(0).getRows();
+            assertEquals(rows + 1, tableRows.size());
+            assertEquals("item 0", tableRows.get(1).getCell(0).getText());
+            assertEquals("1 of 3", tableRows.get(1).getCell(1).getText());
+            assertEquals("2 of ", tableRows.get(2).getCell(1).getText());
+            assertEquals(" of ", tableRows.get(3).getCell(1).getText());
+            assertEquals("item " + (rows - 1), tableRows.get(rows).getCell(0).getText());
+            assertEquals(allText(expectedDoc), allText(actualDoc));
+        }
+    }
+
+    @Test
+    public void rawCopyOfUnchangedPartsTest() throws IOException {
+        File wordFile = new File("src/test/resources/test-input.docx");
+        Map<String, Object> variables = Map.of("pageHeader", "some header value");
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new StreamingWordDocumentTemplateParser(wordFile, variables, false).fill(output);
+        ByteArrayOutputStream recompressedOutput = new ByteArrayOutputStream();
+        StreamingWordDocumentTemplateParser parser = new StreamingWordDocumentTemplateParser(wordFile, variables, false);
+        parser.setRawCopy(false);
+        parser.fill(recompressedOutput);
+
+        try (ZipFile input = new ZipFile(wordFile);
+             ZipFile rawCopy = new ZipFile(new SeekableInMemoryByteChannel(output.toByteArray()));
+             ZipFile recompressed = new ZipFile(new SeekableInMemoryByteChannel(recompressedOutput.toByteArray()))) {
+            // parts without template variables keep their compressed bytes
+            for (String name : List.of("word/styles.xml", "word/theme/theme1.xml", "word/endnotes.xml")) {
+                assertArrayEquals(readRaw(input, name), readRaw(rawCopy, name));
+                assertArrayEquals(readInflated(input, name), readInflated(recompressed, name));
+            }
+            // parts with template variables are rewritten
+            assertFalse(Arrays.equals(readRaw(input, "word/header1.xml"), readRaw(rawCopy, "word/header1.xml")));
+            assertEquals(Collections.list(input.getEntries()).size(), Collections.list(rawCopy.getEntries()).size());
+        }
+        try (XWPFDocument doc = new XWPFDocument(new ByteArrayInputStream(output.toByteArray()))) {
+            assertEquals("Page Header: some header value", doc.getHeaderList().get(0).getParagraphs().get(0).getText());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void missingVariableDeletesOutputTest() throws IOException {
+        File wordFile = new File("src/test/resources/test-input-with-error.docx");
+        Map<String, Object> variables = new ObjectMapper().readValue(new File("src/test/resources/test-variables.json"), Map.class);
+        File outputFile = new File(tempDir, "output.docx");
+
+        StreamingWordDocumentTemplateParser parser = new StreamingWordDocumentTemplateParser(wordFile, variables, true);
+        MissingTemplateVariableException exception = assertThrows(MissingTemplateVariableException.class, () -> parser.fill(outputFile));
+        assertEquals("Missing template variable: name (The name is missing)", exception.getMessage());
+        assertFalse(outputFile.exists());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void validationTest() throws IOException {
+        File wordFile = new File("src/test/resources/test-input-with-error.docx");
+        Map<String, Object> variables = new ObjectMapper().readValue(new File("src/test/resources/test-variables.json"), Map.class);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        StreamingWordDocumentTemplateParser parser = new StreamingWordDocumentTemplateParser(wordFile, variables, false);
+        parser.setValidation(true);
+        MissingTemplateVariableException exception = assertThrows(MissingTemplateVariableException.class, () -> parser.fill(output));
+        assertEquals(List.of("name"), exception.getMissingVariables());
+        assertEquals(0, output.size());
+    }
+
+    private byte[] readRaw(ZipFile zipFile, String name) throws IOException {
+        try (InputStream inputStream = zipFile.getRawInputStream(zipFile.getEntry(name))) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private byte[] readInflated(ZipFile zipFile, String name) throws IOException {
+        try (InputStream inputStream = zipFile.getInputStream(zipFile.getEntry(name))) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    private List<String> allText(XWPFDocument doc) {
+        List<String> result = new ArrayList<>();
+        WordDocumentTemplateParser.forEachBody(doc, body -> collectText(body, result));
+        return result;
+    }
+
+    private void collectText(IBody body, List<String> result) {
+        for (XWPFParagraph paragraph : body.getParagraphs()) {
+            result.add(paragraph.getText());
+        }
+        for (XWPFTable table : body.getTables()) {
+            for (XWPFTableRow row : table.getRows()) {
+                for (XWPFTableCell cell : row.getTableCells()) {
+                    collectText(cell, result);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package document.word;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import document.word.exception.MissingTemplateVariableException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.apache.poi.wp.usermodel.HeaderFooterType;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.junit.jupiter.api.Test;
+
+public class TemplateAnalysisTest {
+
+    @Test
+    public void placeholdersTest() throws IOException {
+        // action
+        TemplateAnalysis analysis = TemplateAnalysis.analyze(template());
+
+        // verify
+        List<String> placeholders = analysis.getPlaceholders().stream().map(Placeholder::toString).collect(Collectors.toList());
+        assertEquals(List.of(
+                "${name:?name is required} in /word/document.xml, paragraph 1",
+                "${title:=none} in /word/document.xml, paragraph 2",
+                "${item[]} in /word/document.xml, table 1, row 2",
+                "${price[]:-0} in /word/document.xml, table 1, row 2",
+                "${total} in /word/document.xml, table 1, row 3",
+                "${footer} in /word/footer1.xml, paragraph 1"), placeholders);
+
+        Placeholder name = analysis.getPlaceholders().get(0);
+        assertEquals(Placeholder.Kind.SCALAR, name.getKind());
+        assertEquals(true, name.isRequired());
+        Placeholder price = analysis.getPlaceholders().get(3);
+        assertEquals(Placeholder.Kind.ROW, price.getKind());
+        assertEquals(true, price.isDefaulted());
+        assertNull(analysis.getPlaceholders().get(4).getModifier());
+
+        assertEquals(Set.of("name", "title", "item[]", "price[]", "total", "footer"), analysis.getVariableNames());
+        assertEquals(Set.of("name"), analysis.getRequiredVariables());
+    }
+
+    @Test
+    public void findMissingTest() throws IOException {
+        // setup
+        TemplateAnalysis analysis = TemplateAnalysis.analyze(template());
+
+        // action & verify
+        assertEquals(List.of("name"), analysis.findMissing(Map.of("title", "Store")));
+        assertEquals(List.of(), analysis.findMissing(Map.of("name", "Pet Store")));
+        assertEquals(List.of(), analysis.findMissing(Map.of(), name -> name.equals("name") ? "Zoo" : null));
+    }
+
+    @Test
+    public void malformedTest() throws IOException {
+        // setup
+        byte[] template = template("Dear ${first name}, ${ok}", "Total: ${total", "${item[]} ${price[]:+0}");
+
+        // action
+        TemplateAnalysis analysis = TemplateAnalysis.analyze(template);
+
+        // verify
+        List<String> malformed = analysis.getMalformed().stream().map(MalformedPlaceholder::toString).collect(Collectors.toList());
+        assertEquals(List.of(
+                "${first name} in /word/document.xml, paragraph 1",
+                "${price[]:+0} in /word/document.xml, table 1, row 1",
+                "${total in /word/document.xml, paragraph 2"), malformed);
+        assertEquals(List.of("ok", "item[]"), List.copyOf(analysis.getVariableNames()));
+    }
+
+    @Test
+    public void requiredAfterAssignmentTest() throws IOException {
+        // setup
+        byte[] assignedFirst = template("${x:=v}", "${x:?x is required}", null);
+        byte[] requiredFirst = template("${x:?x is required}", "${x:=v}", null);
+        byte[] assignedInTable = template(null, "${x:?x is required}", "${x:=v}");
+        byte[] requiredInTable = template(null, "${x:=v}", "${x:?x is required}");
+
+        // action & verify: only an assignment filled before the required placeholder provides the variable
+        assertEquals(List.of(), TemplateAnalysis.analyze(assignedFirst).findMissing(Map.of()));
+        assertEquals(List.of("x"), TemplateAnalysis.analyze(requiredFirst).findMissing(Map.of()));
+        // WordDocumentTemplateParser fills the paragraph after the table before the table
+        assertEquals(List.of("x"), TemplateAnalysis.analyze(assignedInTable).findMissing(Map.of()));
+        assertEquals(List.of(), TemplateAnalysis.analyze(requiredInTable).findMissing(Map.of()));
+        assertEquals(List.of(), TemplateAnalysis.analyze(requiredFirst).findMissing(Map.of("x", "y")));
+
+        new WordDocumentTemplateParser(assignedFirst, Map.of(), false).fill(new ByteArrayOutputStream());
+        new StreamingWordDocumentTemplateParser(assignedFirst, Map.of(), false).fill(new ByteArrayOutputStream());
+        assertEquals(1, new WordDocumentTemplateParser(requiredFirst, Map.of(), false).validate().size());
+        assertEquals(1, new StreamingWordDocumentTemplateParser(requiredFirst, Map.of(), false).validate().size());
+        StreamingWordDocumentTemplateParser parser = new StreamingWordDocumentTemplateParser(requiredFirst, Map.of(), false);
+        parser.setValidation(true);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        assertThrows(MissingTemplateVariableException.class, () -> parser.fill(outputStream));
+        // nothing written
+        assertEquals(0, outputStream.size());
+
+        // both fill the table with the assignment of the paragraph after it, so validation lets it pass
+        WordDocumentTemplateParser validated = new WordDocumentTemplateParser(requiredInTable, Map.of(), false);
+        validated.setValidation(true);
+        assertEquals("v", cellText(fill(validated::fill)));
+        StreamingWordDocumentTemplateParser streamingValidated = new StreamingWordDocumentTemplateParser(requiredInTable, Map.of(), false);
+        streamingValidated.setValidation(true);
+        assertEquals("v", cellText(fill(streamingValidated::fill)));
+    }
+
+    private byte[] fill(Filler filler) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        filler.fill(outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private String cellText(byte[] document) throws IOException {
+        try (XWPFDocument doc = new XWPFDocument(new ByteArrayInputStream(document))) {
+            return doc.getTables().get(0).getRow(0).getCell(0).getText();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Filler {
+        void fill(OutputStream outputStream) throws IOException;
+    }
+
+    @Test
+    public void sameAsCompiledTemplateTest() throws IOException {
+        // setup
+        File wordFile = new File("src/test/resources/test-input.docx");
+
+        // action
+        TemplateAnalysis analysis = TemplateAnalysis.analyze(wordFile);
+
+        // verify: the split placeholders that compiling merges are found all the same
+        List<String> expected = CompiledTemplate.compile(wordFile).getPlaceholders().stream().map(Placeholder::toString).collect(Collectors.toList());
+        assertEquals(expected, analysis.getPlaceholders().stream().map(Placeholder::toString).collect(Collectors.toList()));
+    }
+
+    /*
+     * A template with a table between two paragraphs, any of which may be left out.
+     */
+    private byte[] template(String before, String after, String cell) throws IOException {
+        return TestDocuments.docx(doc -> {
+            if (before != null) doc.createParagraph().createRun().setText(before);
+            if (cell != null) doc.createTable(1, 1).getRow(0).getCell(0).setText(cell);
+            if (after != null) doc.createParagraph().createRun().setText(after);
+        });
+    }
+
+    private byte[] template() throws IOException {
+        return TestDocuments.docx(doc -> {
+            XWPFParagraph paragraph = doc.createParagraph();
+            paragraph.createRun().setText("${name:?name ");
+            paragraph.createRun().setText("is required}");
+            doc.createParagraph().createRun().setText("Title: ${title:=none}");
+            XWPFTable table = doc.createTable(3, 2);
+            table.getRow(0).getCell(0).setText("Item");
+            table.getRow(1).getCell(0).setText("${item[]}");
+            table.getRow(1).getCell(1).setText("${price[]:-0}");
+            table.getRow(2).getCell(1).setText("${total}");
+            doc.createFooter(HeaderFooterType.DEFAULT).createParagraph().createRun().setText("${footer}");
+        });
+    }
+}
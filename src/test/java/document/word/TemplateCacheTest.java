@@ -0,0 +1,65 @@
+package document.word;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TemplateCacheTest {
+
+    @TempDir
+    File tempDir;
+
+    private File template1, template2, template3;
+
+    @BeforeEach
+    public void copyTemplates() throws IOException {
+        template1 = copyTemplate("template1.docx");
+        template2 = copyTemplate("template2.docx");
+        template3 = copyTemplate("template3.docx");
+    }
+
+    @Test
+    public void reuseCompiledTemplateTest() throws IOException {
+        TemplateCache cache = new TemplateCache(2);
+        CompiledTemplate compiled = cache.get(template1);
+        assertSame(compiled, cache.get(template1));
+        assertSame(compiled, cache.get(new File(tempDir, "./template1.docx")));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void recompileModifiedTemplateTest() throws IOException {
+        TemplateCache cache = new TemplateCache(2);
+        CompiledTemplate compiled = cache.get(template1);
+        template1.setLastModified(template1.lastModified() - 10_000);
+        assertNotSame(compiled, cache.get(template1));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedTest() throws IOException {
+        TemplateCache cache = new TemplateCache(2);
+        CompiledTemplate compiled1 = cache.get(template1);
+        CompiledTemplate compiled2 = cache.get(template2);
+        cache.get(template1);
+        cache.get(template3);
+
+        assertEquals(2, cache.size());
+        assertSame(compiled1, cache.get(template1));
+        assertNotSame(compiled2, cache.get(template2));
+    }
+
+    private File copyTemplate(String name) throws IOException {
+        File file = new File(tempDir, name);
+        Files.copy(new File("src/test/resources/test-input.docx").toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+}
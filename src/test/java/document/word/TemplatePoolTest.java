@@ -0,0 +1,120 @@
+package document.word;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import org.apache.poi.openxml4j.exceptions.NotOfficeXmlFileException;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFParagraph;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TemplatePoolTest {
+
+    private static final Executor CALLER = Runnable::run;
+
+    @TempDir
+    File tempDir;
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void fillFromPoolTest() throws IOException {
+        // setup
+        CompiledTemplate template = CompiledTemplate.compile(new File("src/test/resources/test-input.docx"));
+        Map<String, Object> variables = new ObjectMapper().readValue(new File("src/test/resources/test-variables.json"), Map.class);
+
+        try (TemplatePool pool = new TemplatePool(template, 2, CALLER)) {
+            // action
+            List<String> texts = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                new WordDocumentTemplateParser(pool, variables, false).fill(outputStream);
+                texts.add(text(outputStream));
+            }
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            new WordDocumentTemplateParser(template, variables, false).fill(expected);
+
+            // verify: every fill got its own fresh copy
+            assertEquals(List.of(text(expected), text(expected), text(expected)), texts);
+            assertEquals(3, pool.getHits());
+            assertEquals(0, pool.getMisses());
+        }
+    }
+
+    @Test
+    public void closedPoolTest() throws IOException {
+        // setup
+        CompiledTemplate template = CompiledTemplate.compile(new File("src/test/resources/test-input.docx"));
+        TemplatePool pool = new TemplatePool(template, 1, CALLER);
+
+        // action
+        pool.close();
+        new WordDocumentTemplateParser(pool, Map.of(), false).fill(new ByteArrayOutputStream());
+
+        // verify: a closed pool still fills, parsing every copy on the spot
+        assertEquals(0, pool.getHits());
+        assertEquals(1, pool.getMisses());
+        assertThrows(IllegalArgumentException.class, () -> new TemplatePool(template, 0));
+    }
+
+    @Test
+    public void failedCopyTest() throws IOException {
+        // setup: an artifact whose package is not a docx
+        Path artifact = tempDir.toPath().resolve("template.docx" + CompiledTemplate.ARTIFACT_EXTENSION);
+        byte[] content = "not a docx".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        CheckedOutputStream checkedStream = new CheckedOutputStream(outputStream, new CRC32());
+        DataOutputStream dataStream = new DataOutputStream(checkedStream);
+        dataStream.write(new byte[] {'W', 'D', 'T', 'C'});
+        dataStream.writeInt(2);
+        dataStream.write(new byte[32]);
+        dataStream.writeInt(0);
+        dataStream.writeInt(0);
+        dataStream.writeInt(content.length);
+        dataStream.write(content);
+        dataStream.flush();
+        new DataOutputStream(outputStream).writeLong(checkedStream.getChecksum().getValue());
+        Files.write(artifact, outputStream.toByteArray());
+        CompiledTemplate template = CompiledTemplate.open(artifact);
+
+        try (TemplatePool pool = new TemplatePool(template, 1, CALLER)) {
+            // action
+            assertThrows(NotOfficeXmlFileException.class,
+                    () -> new WordDocumentTemplateParser(pool, Map.of(), false).fill(new ByteArrayOutputStream()));
+
+            // verify: the copies made ahead of time failed and were counted, and the fill failed on its own copy
+            assertEquals(2, pool.getPrefetchFailures());
+            assertInstanceOf(NotOfficeXmlFileException.class, pool.getLastPrefetchFailure());
+            assertEquals(0, pool.getHits());
+            assertEquals(1, pool.getMisses());
+        }
+    }
+
+    private String text(ByteArrayOutputStream outputStream) throws IOException {
+        StringBuilder result = new StringBuilder();
+        try (XWPFDocument doc = new XWPFDocument(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            WordDocumentTemplateParser.forEachBody(doc, body -> {
+                for (XWPFParagraph paragraph : body.getParagraphs()) {
+                    result.append(paragraph.getText()).append('\n');
+                }
+            });
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,25 @@
+package document.word;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.function.Consumer;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+
+/*
+ * Builds the small docx templates the tests fill, so that a test only lists the paragraphs, tables, headers and
+ * footers it needs.
+ */
+final class TestDocuments {
+
+    private TestDocuments() {
+    }
+
+    static byte[] docx(Consumer<XWPFDocument> builder) throws IOException {
+        try (XWPFDocument doc = new XWPFDocument()) {
+            builder.accept(doc);
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            doc.write(outputStream);
+            return outputStream.toByteArray();
+        }
+    }
+}
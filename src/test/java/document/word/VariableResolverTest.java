@@ -0,0 +1,40 @@
+package document.word;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class VariableResolverTest {
+
+    @Test
+    public void rowGroupTest() {
+        // setup
+        AtomicInteger lookups = new AtomicInteger();
+        Map<String, Object> variables = new HashMap<>(Map.of("items[]", List.of("a", "b", "c")));
+        VariableResolver resolver = new VariableResolver(variables, name -> {
+            lookups.incrementAndGet();
+            return null;
+        });
+        String rowText = "${items[]} ${total:-9} ${items[]} ${total:-9} ${missing} ${missing}";
+
+        // action
+        VariableResolver.RowGroup rowGroup = resolver.rowGroup(PlaceholderScanner.scan(rowText));
+
+        // verify
+        assertEquals(3, rowGroup.rowCount());
+        assertEquals(2, lookups.get());
+        List<PlaceholderToken> tokens = PlaceholderScanner.scan("${items[]} ${total:-9}");
+        VariableResolver first = rowGroup.forRow(0);
+        assertEquals("a", first.resolve(tokens.get(0)));
+        assertEquals(9, first.resolve(tokens.get(1)));
+        VariableResolver last = rowGroup.forRow(2);
+        assertEquals("c", last.resolve(tokens.get(0)));
+        assertEquals("", last.resolve(tokens.get(1)));
+        VariableResolver beyond = rowGroup.forRow(3);
+        assertEquals("", beyond.resolve(tokens.get(0)));
+    }
+}
@@ -7,12 +7,18 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import document.word.exception.MissingTemplateVariableException;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import org.apache.poi.wp.usermodel.HeaderFooterType;
 import org.apache.poi.xwpf.usermodel.IBody;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
 import org.apache.poi.xwpf.usermodel.XWPFFooter;
@@ -95,6 +101,217 @@ public class WordDocumentTemplateParserTest {
         assertFalse(outputFile.exists());
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void wordDocumentTemplateParserValidationTest() throws IOException {
+        // setup
+        byte[] template = TestDocuments.docx(doc -> {
+            doc.createParagraph().createRun().setText("${name:?The name is missing} ${title:-none}");
+            doc.createTable(1, 1).getRow(0).getCell(0).setText("${items[]:?} ${name:?}");
+            doc.createFooter(HeaderFooterType.DEFAULT).createParagraph().createRun().setText("${id:?}");
+        });
+        WordDocumentTemplateParser parser = new WordDocumentTemplateParser(template, Map.of("items[]", List.of("a")), false);
+
+        // action & verify: without validation, the fill fails on the first missing variable
+        MissingTemplateVariableException exception = assertThrows(MissingTemplateVariableException.class, () -> parser.fill(new ByteArrayOutputStream()));
+        assertEquals("Missing template variable: name (The name is missing)", exception.getMessage());
+
+        parser.setValidation(true);
+        exception = assertThrows(MissingTemplateVariableException.class, () -> parser.fill(new ByteArrayOutputStream()));
+        assertEquals("Missing template variables: name (The name is missing), id", exception.getMessage());
+        assertEquals(List.of("name", "id"), exception.getMissingVariables());
+
+        List<Placeholder> missing = parser.validate();
+        assertEquals("/word/footer1.xml", missing.get(1).getPartName());
+    }
+
+    @Test
+    public void wordDocumentTemplateParserFillStreamTest() throws IOException {
+        // setup
+        byte[] wordBytes = Files.readAllBytes(Path.of("src/test/resources/test-input.docx"));
+        File variableFile = new File("src/test/resources/test-variables.json");
+
+        // action
+        Map<String, Object> variables = new ObjectMapper().readValue(variableFile, Map.class);
+        WordDocumentTemplateParser parser = new WordDocumentTemplateParser(new ByteArrayInputStream(wordBytes), variables, true);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        parser.fill(outputStream);
+        ByteArrayOutputStream channelOutputStream = new ByteArrayOutputStream();
+        parser.fill(Channels.newChannel(channelOutputStream));
+
+        // verify
+        for (byte[] output : List.of(outputStream.toByteArray(), channelOutputStream.toByteArray())) {
+            try (XWPFDocument doc = new XWPFDocument(new ByteArrayInputStream(output))) {
+                assertEquals(1, findParagraphsInHeaders(doc, "Page Header: some header value").size());
+                assertEquals(5, doc.getTableArray(0).getRows().size());
+                assertEquals(1, findParagraphs(doc, "Title: Programmer").size());
+            }
+        }
+    }
+
+    @Test
+    public void wordDocumentTemplateParserFragmentedRunsTest() throws IOException {
+        // setup: every character in its own run, as left behind by spell check or track changes
+        String text = "Dear ${name}, your order ${order:-none} is ready. ".repeat(40);
+        byte[] template = TestDocuments.docx(doc -> {
+            XWPFParagraph paragraph = doc.createParagraph();
+            for (char c : text.toCharArray()) {
+                paragraph.createRun().setText(String.valueOf(c));
+            }
+        });
+
+        // action
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new WordDocumentTemplateParser(template, Map.of("name", "Pet Store"), false).fill(outputStream);
+
+        // verify
+        try (XWPFDocument doc = new XWPFDocument(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            XWPFParagraph paragraph = doc.getParagraphArray(0);
+            assertEquals("Dear Pet Store, your order none is ready. ".repeat(40), paragraph.getText());
+            assertEquals(paragraph.getRuns().size(), paragraph.getCTP().sizeOfRArray());
+        }
+    }
+
+    @Test
+    public void wordDocumentTemplateParserLargeTableTest() throws IOException {
+        // setup
+        byte[] template = TestDocuments.docx(doc -> {
+            XWPFTable table = doc.createTable(3, 2);
+            table.getRow(0).getCell(0).setText("Item");
+            XWPFParagraph paragraph = table.getRow(1).getCell(0).getParagraphArray(0);
+            paragraph.createRun().setText("${ite");
+            paragraph.createRun().setText("ms[]}");
+            table.getRow(1).getCell(1).setText("${prices[]} ${currency}");
+            table.getRow(2).getCell(0).setText("Total");
+        });
+        List<String> items = new ArrayList<>();
+        List<Integer> prices = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            items.add("item " + i);
+            prices.add(i);
+        }
+
+        // action
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new WordDocumentTemplateParser(template, Map.of("items[]", items, "prices[]", prices, "currency", "USD"), false).fill(outputStream);
+
+        // verify
+        try (XWPFDocument doc = new XWPFDocument(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            XWPFTable table = doc.getTableArray(0);
+            assertEquals(5002, table.getRows().size());
+            assertEquals("item 0", table.getRow(1).getCell(0).getText());
+            assertEquals("0 USD", table.getRow(1).getCell(1).getText());
+            assertEquals("item 4999", table.getRow(5000).getCell(0).getText());
+            assertEquals("4999 ", table.getRow(5000).getCell(1).getText());
+            assertEquals("Total", table.getRow(5001).getCell(0).getText());
+        }
+    }
+
+    @Test
+    public void wordDocumentTemplateParserParallelPartsTest() throws IOException {
+        // setup
+        byte[] template = TestDocuments.docx(doc -> {
+            doc.createParagraph().createRun().setText("Body ${name}");
+            for (HeaderFooterType type : HeaderFooterType.values()) {
+                XWPFParagraph paragraph = doc.createHeader(type).createParagraph();
+                paragraph.createRun().setText("Header " + type + " ${na");
+                paragraph.createRun().setText("me} ${pets}");
+                doc.createFooter(type).createParagraph().createRun().setText("Footer " + type + " ${title:-none}");
+            }
+            for (int i = 0; i < 20; i++) {
+                doc.createFootnote().createParagraph().createRun().setText("Note " + i + " ${name}");
+            }
+        });
+        Map<String, Object> variables = Map.of("name", "Zoo", "pets", List.of("cat", "dog"));
+        RenderMetrics sequentialMetrics = new RenderMetrics();
+        RenderMetrics parallelMetrics = new RenderMetrics();
+
+        // action
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        WordDocumentTemplateParser sequential = new WordDocumentTemplateParser(template, variables, false);
+        sequential.setRenderListener("template", sequentialMetrics);
+        sequential.fill(expected);
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        WordDocumentTemplateParser parallel = new WordDocumentTemplateParser(template, variables, false);
+        parallel.setRenderListener("template", parallelMetrics);
+        parallel.setParallelParts(true);
+        parallel.fill(actual);
+
+        // verify
+        try (XWPFDocument expectedDoc = new XWPFDocument(new ByteArrayInputStream(expected.toByteArray()));
+             XWPFDocument actualDoc = new XWPFDocument(new ByteArrayInputStream(actual.toByteArray()))) {
+            List<String> expectedText = new ArrayList<>();
+            List<String> actualText = new ArrayList<>();
+            WordDocumentTemplateParser.forEachBody(expectedDoc, body -> findParagraphs(body, "(?s).*").forEach(p -> expectedText.add(p.getText())));
+            WordDocumentTemplateParser.forEachBody(actualDoc, body -> findParagraphs(body, "(?s).*").forEach(p -> actualText.add(p.getText())));
+            assertEquals(expectedText, actualText);
+            assertEquals(3, findParagraphsInHeaders(actualDoc, "Header \\w+ Zoo cat").size());
+            assertEquals(3, findParagraphsInHeaders(actualDoc, "dog").size());
+            assertEquals(20, findParagraphsInFootnotes(actualDoc, "Note \\d+ Zoo").size());
+        }
+        for (RenderListener.Counter counter : RenderListener.Counter.values()) {
+            assertEquals(sequentialMetrics.getCount(counter), parallelMetrics.getCount(counter), counter.name());
+        }
+    }
+
+    @Test
+    public void wordDocumentTemplateParserParallelPartsFailureTest() throws IOException {
+        // setup
+        byte[] template = TestDocuments.docx(doc -> {
+            doc.createHeader(HeaderFooterType.DEFAULT).createParagraph().createRun().setText("${title:=Report}");
+            doc.createFooter(HeaderFooterType.DEFAULT).createParagraph().createRun().setText("${title}");
+            doc.createFooter(HeaderFooterType.FIRST).createParagraph().createRun().setText("${id:?}");
+        });
+        WordDocumentTemplateParser parser = new WordDocumentTemplateParser(template, Map.of(), false);
+        parser.setParallelParts(true);
+
+        // action & verify: a failing part fails the fill, with the exception thrown by the part
+        MissingTemplateVariableException exception = assertThrows(MissingTemplateVariableException.class, () -> parser.fill(new ByteArrayOutputStream()));
+        assertEquals(List.of("id"), exception.getMissingVariables());
+
+        // action: parts assigning a variable are filled one after another, so that the footer sees the assignment
+        WordDocumentTemplateParser assigning = new WordDocumentTemplateParser(template, Map.of("id", 1), false);
+        assigning.setParallelParts(true);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        assigning.fill(outputStream);
+
+        // verify
+        try (XWPFDocument doc = new XWPFDocument(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            assertEquals(2, findParagraphsInFooters(doc, "Report|1").size());
+        }
+    }
+
+    @Test
+    public void wordDocumentTemplateParserLargeListTest() throws IOException {
+        // setup
+        byte[] template = TestDocuments.docx(doc -> {
+            doc.createParagraph().createRun().setText("Pets:");
+            XWPFParagraph paragraph = doc.createParagraph();
+            paragraph.createRun().setText("- ");
+            paragraph.createRun().setText("${pets}!");
+            doc.createParagraph().createRun().setText("End");
+        });
+        List<String> pets = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            pets.add("pet " + i);
+        }
+
+        // action
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new WordDocumentTemplateParser(template, Map.of("pets", pets), false).fill(outputStream);
+
+        // verify
+        try (XWPFDocument doc = new XWPFDocument(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            List<XWPFParagraph> paragraphs = doc.getParagraphs();
+            assertEquals(20002, paragraphs.size());
+            assertEquals("Pets:", paragraphs.get(0).getText());
+            assertEquals("- pet 0", paragraphs.get(1).getText());
+            assertEquals("pet 1", paragraphs.get(2).getText());
+            assertEquals("pet 19999!", paragraphs.get(20000).getText());
+            assertEquals("End", paragraphs.get(20001).getText());
+        }
+    }
+
     private List<XWPFParagraph> findParagraphsInHeaders(XWPFDocument doc, String regex) {
         List<XWPFParagraph> result = new ArrayList<>();
         for (XWPFHeader header : doc.getHeaderList()) {
@@ -0,0 +1,64 @@
+package document.word.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class JsonUtilUTest {
+
+    @Test
+    public void parseJsonValueTest() {
+        assertEquals(List.of("a", "b"), JsonUtil.parseJsonValue("[\"a\", \"b\"]"));
+        assertEquals(Map.of("a", 1), JsonUtil.parseJsonValue(" {\"a\": 1}"));
+        assertEquals("quoted", JsonUtil.parseJsonValue("\"quoted\""));
+        assertEquals(-12, JsonUtil.parseJsonValue("-12"));
+        assertEquals(true, JsonUtil.parseJsonValue("true"));
+        assertNull(JsonUtil.parseJsonValue("null"));
+    }
+
+    @Test
+    public void parseJsonValue_plainTextTest() {
+        assertEquals("Programmer", JsonUtil.parseJsonValue("Programmer"));
+        assertEquals("no one", JsonUtil.parseJsonValue("no one"));
+        assertEquals("", JsonUtil.parseJsonValue(""));
+        assertEquals("  ", JsonUtil.parseJsonValue("  "));
+        assertEquals("[not json", JsonUtil.parseJsonValue("[not json"));
+        assertEquals("nothing", JsonUtil.parseJsonValue("nothing"));
+    }
+
+    @Test
+    public void parseCachedJsonValueTest() {
+        Object value = JsonUtil.parseCachedJsonValue("[\"cached 1\", \"cached 2\"]");
+        assertEquals(List.of("cached 1", "cached 2"), value);
+        assertSame(value, JsonUtil.parseCachedJsonValue("[\"cached 1\", \"cached 2\"]"));
+        assertThrows(UnsupportedOperationException.class, () -> ((List<?>) value).clear());
+        assertNull(JsonUtil.parseCachedJsonValue("null"));
+        assertNull(JsonUtil.parseCachedJsonValue("null"));
+        assertEquals("plain", JsonUtil.parseCachedJsonValue("plain"));
+    }
+
+    @Test
+    public void parseCachedJsonValue_evictionTest() {
+        // setup
+        Object evicted = JsonUtil.parseCachedJsonValue("[\"evicted\"]");
+        Object kept = JsonUtil.parseCachedJsonValue("[\"kept\"]");
+
+        // action: more values than the cache holds, seen once each, while one value keeps being used
+        for (int i = 0; i < JsonUtil.MAX_CACHED_VALUES; i++) {
+            JsonUtil.parseCachedJsonValue("[" + i + "]");
+            JsonUtil.parseCachedJsonValue("[\"kept\"]");
+        }
+
+        // verify: the least recently used value was dropped, and is parsed again
+        assertSame(kept, JsonUtil.parseCachedJsonValue("[\"kept\"]"));
+        Object parsedAgain = JsonUtil.parseCachedJsonValue("[\"evicted\"]");
+        assertEquals(evicted, parsedAgain);
+        assertNotSame(evicted, parsedAgain);
+    }
+}
@@ -8,6 +8,8 @@ import org.apache.poi.xwpf.usermodel.ParagraphAlignment;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
 import org.apache.poi.xwpf.usermodel.XWPFParagraph;
 import org.apache.poi.xwpf.usermodel.XWPFRun;
+import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+import org.apache.xmlbeans.impl.xb.xmlschema.SpaceAttribute;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -78,10 +80,9 @@ public class ParagraphUtilUTest {
         assertEquals(2, doc.getParagraphArray(0).getRuns().get(0).getCTR().getTArray().length);
 
         // action
-        int runsAdded = ParagraphUtil.updateRunText(initialParagraph, 0, new String[0]);
+        ParagraphUtil.updateRunText(initialParagraph, 0, new String[0]);
 
         // verify
-        assertEquals(0, runsAdded);
         assertEquals("end text", doc.getParagraphArray(0).getText());
 
         List<XWPFRun> runs = doc.getParagraphArray(0).getRuns();
@@ -104,29 +105,85 @@ public class ParagraphUtilUTest {
         assertEquals(2, doc.getParagraphArray(0).getRuns().get(0).getCTR().getTArray().length);
 
         // action
-        int runsAdded = ParagraphUtil.updateRunText(initialParagraph, 0, new String[] { "line 1", "line 2" });
+        ParagraphUtil.updateRunText(initialParagraph, 0, new String[] { "line 1", " line 2" });
 
         // verify
-        assertEquals(2, runsAdded);
-        assertEquals("line 1\nline 2end text", doc.getParagraphArray(0).getText());
+        assertEquals("line 1\n line 2end text", doc.getParagraphArray(0).getText());
 
         List<XWPFRun> runs = doc.getParagraphArray(0).getRuns();
-        assertEquals(4, runs.size());
+        assertEquals(2, runs.size());
 
-        assertEquals(1, runs.get(0).getCTR().getTArray().length);
-        assertEquals(0, runs.get(0).getCTR().getBrArray().length);
-        assertEquals("line 1", runs.get(0).text());
+        // the lines and the br node between them stay in the same run, in order
+        assertEquals(2, runs.get(0).getCTR().getTArray().length);
+        assertEquals(1, runs.get(0).getCTR().getBrArray().length);
+        assertEquals("line 1\n line 2", runs.get(0).text());
+        assertEquals(SpaceAttribute.Space.PRESERVE, runs.get(0).getCTR().getTArray(1).getSpace());
+
+        assertEquals(1, runs.get(1).getCTR().getTArray().length);
+        assertEquals(0, runs.get(1).getCTR().getBrArray().length);
+        assertEquals("end text", runs.get(1).text());
+    }
+
+    @Test
+    public void insertParagraphsBeforeTest() {
+        // setup
+        XWPFParagraph lastParagraph = doc.createParagraph();
+        lastParagraph.setAlignment(ParagraphAlignment.CENTER);
+        lastParagraph.createRun().setText("prefix ");
+        XWPFRun styleRun = lastParagraph.createRun();
+        styleRun.setBold(true);
+        styleRun.setText("${pets}");
 
-        assertEquals(0, runs.get(1).getCTR().getTArray().length);
-        assertEquals(1, runs.get(1).getCTR().getBrArray().length);
-        assertEquals("\n", runs.get(1).text());
+        // action
+        List<XWPFParagraph> paragraphs = ParagraphUtil.insertParagraphsBefore(doc, lastParagraph, lastParagraph.getRuns().subList(0, 1),
+                styleRun, List.of("cat", "dog\nbig ", "bird"));
+
+        // verify
+        assertEquals(3, paragraphs.size());
+        assertEquals(List.of("initial text", "prefix cat", "dog\nbig ", "bird", "prefix ${pets}"), doc.getParagraphs().stream().map(XWPFParagraph::getText).toList());
+        assertEquals(5, doc.getBodyElements().size());
+        assertEquals(paragraphs.get(1), doc.getBodyElements().get(2));
+        assertEquals(paragraphs.get(1), doc.getParagraph(doc.getDocument().getBody().getPArray(2)));
+        assertEquals(ParagraphAlignment.CENTER, paragraphs.get(2).getAlignment());
+
+        List<XWPFRun> runs = paragraphs.get(1).getRuns();
+        assertEquals(1, runs.size());
+        assertEquals("dog\nbig ", runs.get(0).text());
+        assertEquals(true, runs.get(0).isBold());
+        assertEquals(false, paragraphs.get(0).getRuns().get(0).isBold());
+        assertEquals(true, paragraphs.get(0).getRuns().get(1).isBold());
+    }
 
-        assertEquals(1, runs.get(2).getCTR().getTArray().length);
-        assertEquals(0, runs.get(2).getCTR().getBrArray().length);
-        assertEquals("line 2", runs.get(2).text());
+    @Test
+    public void insertParagraphsBeforeInTableCellTest() {
+        // setup
+        XWPFTableCell cell = doc.createTable(1, 1).getRow(0).getCell(0);
+        XWPFParagraph target = cell.getParagraphArray(0);
+        XWPFRun run = target.createRun();
+        run.setText("last");
 
-        assertEquals(1, runs.get(3).getCTR().getTArray().length);
-        assertEquals(0, runs.get(3).getCTR().getBrArray().length);
-        assertEquals("end text", runs.get(3).text());
+        // action
+        ParagraphUtil.insertParagraphsBefore(cell, target, List.of(), run, List.of("first", "second"));
+
+        // verify
+        assertEquals(List.of("first", "second", "last"), cell.getParagraphs().stream().map(XWPFParagraph::getText).toList());
+        assertEquals(3, cell.getBodyElements().size());
+        assertEquals(3, cell.getCTTc().sizeOfPArray());
+    }
+
+    @Test
+    public void removeRunsTest() {
+        XWPFRun second = initialParagraph.createRun();
+        second.setText(" second");
+        XWPFRun third = initialParagraph.createRun();
+        third.setText(" third");
+        initialParagraph.createRun().setText(" fourth");
+
+        ParagraphUtil.removeRuns(initialParagraph, List.of(second, third));
+
+        assertEquals(2, initialParagraph.getRuns().size());
+        assertEquals(2, initialParagraph.getIRuns().size());
+        assertEquals(2, initialParagraph.getCTP().sizeOfRArray());
+        assertEquals("initial text fourth", initialParagraph.getText());
     }
 }
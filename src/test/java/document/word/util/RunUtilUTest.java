@@ -88,6 +88,22 @@ public class RunUtilUTest {
         assertEquals(0, run1.getCTR().getBrList().size());
     }
 
+    @Test
+    public void replaceRunText_linesTest() {
+        XWPFRun run = run2.getParagraph().createRun();
+        run.addTab();
+        run.setText("old");
+        run.addBreak();
+        run.setText("text");
+
+        RunUtil.replaceRunText(run.getCTR(), new String[] { "line 1", "line 2", "" });
+
+        // the tab stays in front, the lines follow the first text node with a br node between every two of them
+        assertEquals("\tline 1\nline 2\n", run.text());
+        assertEquals(3, run.getCTR().getTList().size());
+        assertEquals(2, run.getCTR().getBrList().size());
+    }
+
     @Test
     public void spliceRunTail_affectSingleTextNodeTest() {
         RunUtil.spliceRunTail(run1, 4, "none");
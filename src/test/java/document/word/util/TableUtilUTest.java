@@ -1,7 +1,9 @@
 package document.word.util;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
+import java.util.List;
 import org.apache.poi.xwpf.usermodel.XWPFDocument;
 import org.apache.poi.xwpf.usermodel.XWPFRun;
 import org.apache.poi.xwpf.usermodel.XWPFTable;
@@ -26,6 +28,29 @@ public class TableUtilUTest {
         getFirstRunInCell(row.getTableCells().get(1)).setFontFamily("Arial");
     }
 
+    @Test
+    public void insertCopiesAfterTest() {
+        XWPFTableRow lastRow = table.createRow();
+        lastRow.getCell(0).setText("last");
+
+        List<XWPFTableRow> copies = TableUtil.insertCopiesAfter(table, row, 3);
+
+        assertEquals(3, copies.size());
+        assertEquals(6, table.getRows().size());
+        assertEquals(6, table.getCTTbl().sizeOfTrArray());
+        for (int i = 0; i < 3; i++) {
+            assertSame(copies.get(i), table.getRow(2 + i));
+            assertSame(copies.get(i).getCtRow(), table.getCTTbl().getTrArray(2 + i));
+            assertEquals("some text", copies.get(i).getTableCells().get(1).getText());
+            assertEquals("Arial", getFirstRunInCell(copies.get(i).getTableCells().get(1)).getFontFamily());
+        }
+        assertSame(lastRow, table.getRow(5));
+
+        // verify the copies do not share references with the row
+        getFirstRunInCell(copies.get(0).getTableCells().get(1)).setFontFamily("Verdana");
+        assertEquals("Arial", getFirstRunInCell(row.getTableCells().get(1)).getFontFamily());
+    }
+
     @Test
     public void copyTest() {
         XWPFTableRow newRow = table.createRow();
@@ -0,0 +1,57 @@
+package document.word.variable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class CompositeVariableSourceTest {
+
+    @Test
+    public void lookupInOrderTest() {
+        VariableSource first = new MapVariableSource(Map.of("a", "first a"));
+        VariableSource second = new MapVariableSource(Map.of("a", "second a", "b", "second b"));
+        CompositeVariableSource source = new CompositeVariableSource(List.of(first, second));
+
+        assertEquals("first a", source.lookup("a"));
+        assertEquals("second b", source.lookup("b"));
+        assertNull(source.lookup("c"));
+    }
+
+    @Test
+    public void lookupOnceTest() {
+        AtomicInteger lookups = new AtomicInteger();
+        Map<String, Object> values = new HashMap<>(Map.of("a", "value a"));
+        CompositeVariableSource source = new CompositeVariableSource(List.of(name -> {
+            lookups.incrementAndGet();
+            return values.get(name);
+        }));
+
+        assertEquals("value a", source.lookup("a"));
+        assertNull(source.lookup("missing"));
+
+        // the outcome of a lookup, including a miss, stays the same even if the underlying source changes
+        values.put("a", "changed a");
+        values.put("missing", "now present");
+        assertEquals("value a", source.lookup("a"));
+        assertNull(source.lookup("missing"));
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    public void systemPropertySnapshotTest() {
+        System.setProperty("compositeVariableSourceTest.list", "[\"a\",\"b\"]");
+        try {
+            SystemPropertyVariableSource source = new SystemPropertyVariableSource();
+            System.setProperty("compositeVariableSourceTest.list", "changed");
+            assertEquals(List.of("a", "b"), source.lookup("compositeVariableSourceTest.list"));
+            assertNull(source.lookup("compositeVariableSourceTest.missing"));
+        } finally {
+            System.clearProperty("compositeVariableSourceTest.list");
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package document.word.variable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LazyListTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void jsonLinesTest() throws IOException {
+        // setup
+        Path file = tempDir.resolve("rows.jsonl");
+        Files.writeString(file, "\"a\"\n1\n{\"b\": [2, 3]}\n");
+
+        // action
+        List<Object> values = LazyList.jsonLines(file).toList();
+
+        // verify
+        assertEquals(List.of("a", 1, Map.of("b", List.of(2, 3))), values);
+    }
+
+    @Test
+    public void csvColumnTest() throws IOException {
+        // setup
+        Path file = tempDir.resolve("rows.csv");
+        Files.writeString(file, "name,price\r\n\"Smith, John\",1\n\"say \"\"hi\"\"\",\"2\n3\"\nshort\n");
+
+        // action
+        List<Object> names = LazyList.csvColumn(file, "name").toList();
+        List<Object> prices = LazyList.csvColumn(file, "price").toList();
+
+        // verify
+        assertEquals(List.of("Smith, John", "say \"hi\"", "short"), names);
+        assertEquals(List.of("1", "2\n3", ""), prices);
+        assertThrows(IOException.class, () -> LazyList.csvColumn(file, "missing").open());
+    }
+
+    @Test
+    public void jsonVariablesTest() throws IOException {
+        // setup
+        Path file = tempDir.resolve("variables.json");
+        Files.writeString(file, "{\"title\": \"Report\", \"rows[]\": [{\"n\": 1}, \"two\", [3]], \"pets\": [\"cat\"], \"after\": true}");
+
+        // action
+        Map<String, Object> variables = JsonVariables.read(file);
+
+        // verify
+        assertEquals("Report", variables.get("title"));
+        assertEquals(List.of("cat"), variables.get("pets"));
+        assertEquals(true, variables.get("after"));
+        LazyList rows = assertInstanceOf(LazyList.class, variables.get("rows[]"));
+        assertEquals(List.of(Map.of("n", 1), "two", List.of(3)), rows.toList());
+        // every render reads the array again
+        assertEquals(3, rows.toList().size());
+    }
+
+    @Test
+    public void jsonVariablesUtf16Test() throws IOException {
+        // setup
+        Path file = tempDir.resolve("variables.json");
+        Files.writeString(file, "{\"title\": \"R\u00e9port\", \"rows[]\": [{\"n\": 1}, \"two\"], \"after\": true}", StandardCharsets.UTF_16);
+
+        // action
+        Map<String, Object> variables = JsonVariables.read(file);
+
+        // verify: the array is read up front
+        assertEquals("R\u00e9port", variables.get("title"));
+        assertEquals(List.of(Map.of("n", 1), "two"), variables.get("rows[]"));
+        assertEquals(true, variables.get("after"));
+    }
+}